@@ -0,0 +1,125 @@
+package com.devtaco.distribute.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.devtaco.distribute.model.FixedPoint;
+import com.devtaco.distribute.model.ImplValue;
+import com.devtaco.distribute.model.SourceData;
+
+/**
+ * 매 tick 마다 도는 계산 경로 : weight 합산, source 정렬, shard 별 부분 값 계산. <p>
+ * BigDecimal 모드와 fixed point 모드를 같은 데이터로 비교한다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CalculationBenchmark {
+
+  private static final int SCALE = 8;
+
+  /** sourceClassifyByKey 의 key 개수 */
+  @Param({ "100", "10000", "100000" })
+  private int sourceCount;
+
+  private ImplValue decimalValue;
+  private ImplValue fixedPointValue;
+
+  private List<SourceData> decimalSources;
+  private List<SourceData> fixedPointSources;
+
+  private BigDecimal[] sectionWeights;
+  private long[] scaledSectionWeights;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(42);
+
+    Map<String, SourceData> decimalByKey = new HashMap<>();
+    Map<String, SourceData> fixedPointByKey = new HashMap<>();
+    sectionWeights = new BigDecimal[sourceCount];
+    scaledSectionWeights = new long[sourceCount];
+
+    for (int i = 0; i < sourceCount; i++) {
+      BigDecimal weight = BigDecimal.valueOf(random.nextInt(1_000_000_000), SCALE);
+      sectionWeights[i] = weight;
+      scaledSectionWeights[i] = FixedPoint.toScaled(weight, SCALE);
+
+      SourceData decimal = new SourceData();
+      decimal.addWeight(weight);
+      decimalByKey.put("source-" + i, decimal);
+
+      SourceData fixedPoint = new SourceData(SCALE);
+      fixedPoint.addWeight(weight);
+      fixedPointByKey.put("source-" + i, fixedPoint);
+    }
+
+    decimalValue = new ImplValue(1).setSourceClassifyByKey(decimalByKey);
+    fixedPointValue = new ImplValue(2).setSourceClassifyByKey(fixedPointByKey);
+    decimalSources = new ArrayList<>(decimalByKey.values());
+    fixedPointSources = new ArrayList<>(fixedPointByKey.values());
+  }
+
+  @Benchmark
+  public BigDecimal calculateValue() {
+    return decimalValue.calculateValue();
+  }
+
+  @Benchmark
+  public BigDecimal calculatePartialValueDecimal() {
+    return decimalValue.calculatePartialValue(0, 1);
+  }
+
+  @Benchmark
+  public long calculatePartialValueFixedPoint() {
+    return fixedPointValue.calculateScaledPartialValue(0, 1, SCALE);
+  }
+
+  @Benchmark
+  public BigDecimal addWeightDecimal() {
+    SourceData source = new SourceData();
+    for (BigDecimal weight : sectionWeights) {
+      source.addWeight(weight);
+    }
+    return source.getWeight();
+  }
+
+  @Benchmark
+  public long addWeightFixedPoint() {
+    SourceData source = new SourceData(SCALE);
+    for (long scaledWeight : scaledSectionWeights) {
+      source.addScaledWeight(scaledWeight);
+    }
+    return source.getScaledWeight();
+  }
+
+  @Benchmark
+  public List<SourceData> sortDecimal() {
+    List<SourceData> sorted = new ArrayList<>(decimalSources);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  @Benchmark
+  public List<SourceData> sortFixedPoint() {
+    List<SourceData> sorted = new ArrayList<>(fixedPointSources);
+    Collections.sort(sorted);
+    return sorted;
+  }
+}
@@ -0,0 +1,72 @@
+package com.devtaco.distribute.benchmark;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.devtaco.distribute.util.CronUtils;
+import com.devtaco.distribute.util.FireTimeIndex;
+
+/**
+ * spec 등록과 schedule 계산에 쓰이는 cron 유틸리티.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CronUtilsBenchmark {
+
+  @Param({ "0 * * * * *", "0 0/5 * * * *", "0 30 9 ? * MON-FRI" })
+  private String cronExpression;
+
+  private final ZonedDateTime baseTime = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+  /** spec 1000 개가 몇 가지 cron 을 나눠 쓰는 경우 */
+  private final Map<Integer, String> cronBySpecId = new HashMap<>();
+
+  private FireTimeIndex<Integer> fireTimeIndex;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    for (int id = 0; id < 1000; id++) {
+      cronBySpecId.put(id, "0 " + (id % 60) + " * * * *");
+    }
+    fireTimeIndex = CronUtils.buildFireTimeIndex(cronBySpecId, baseTime, 10);
+  }
+
+  @Benchmark
+  public String toCanonicalExpression() {
+    return CronUtils.toCanonicalExpression(cronExpression);
+  }
+
+  @Benchmark
+  public ZonedDateTime nextExecutionDate() {
+    return CronUtils.nextExecutionDate(cronExpression, baseTime);
+  }
+
+  @Benchmark
+  public ZonedDateTime previousExecutionDate() {
+    return CronUtils.previousExecutionDate(cronExpression, baseTime);
+  }
+
+  @Benchmark
+  public FireTimeIndex<Integer> buildFireTimeIndex() {
+    return CronUtils.buildFireTimeIndex(cronBySpecId, baseTime, 10);
+  }
+
+  @Benchmark
+  public Object lookupNextFireTime() {
+    return fireTimeIndex.nextAfter(baseTime.plusMinutes(90));
+  }
+}
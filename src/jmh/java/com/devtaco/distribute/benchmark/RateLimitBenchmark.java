@@ -0,0 +1,51 @@
+package com.devtaco.distribute.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.devtaco.distribute.config.RateLimitRuleConfig;
+
+/**
+ * 여러 thread 가 같은 provider 의 bucket 을 두고 경쟁하는 상황. <p>
+ * token 은 금방 바닥나므로, 대부분은 "거절" 경로의 비용을 잰다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimitBenchmark {
+
+  private static final String SHARED_PROVIDER = "benchmark-shared";
+
+  private final RateLimitRuleConfig rateLimit = RateLimitRuleConfig.getInstance();
+
+  @Benchmark
+  @Threads(1)
+  public boolean checkRateLimitSingleThread() {
+    return rateLimit.checkRateLimitBy(SHARED_PROVIDER);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean checkRateLimitContended() {
+    return rateLimit.checkRateLimitBy(SHARED_PROVIDER);
+  }
+
+  /** thread 마다 다른 provider. limiter map 조회 비용만 경쟁한다. */
+  @State(Scope.Thread)
+  public static class ThreadProvider {
+    private final String provider = "benchmark-" + Thread.currentThread().getId();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean checkRateLimitPerThreadProvider(ThreadProvider threadProvider) {
+    return rateLimit.checkRateLimitBy(threadProvider.provider);
+  }
+}
@@ -0,0 +1,57 @@
+package com.devtaco.distribute.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.devtaco.distribute.service.SpecChangeAggregator;
+import com.devtaco.distribute.service.SpecUpdateListener.Operation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * spec 변경 알림 처리 : NOTIFY payload 파싱과 id 별 병합. <p>
+ * bulk update 처럼 한 번에 많은 알림이 들어오는 경우를 가정한다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpecPayloadBenchmark {
+
+  private static final String[] OPERATIONS = { "INSERT", "UPDATE", "DELETE" };
+
+  /** 한 번에 들어오는 알림 개수 */
+  @Param({ "1", "500" })
+  private int notificationCount;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private String[] payloads;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    payloads = new String[notificationCount];
+    for (int i = 0; i < notificationCount; i++) {
+      // 같은 id 가 여러 번 바뀌는 경우를 섞는다.
+      payloads[i] = "{\"id\": " + (i % 100) + ", \"operation\": \"" + OPERATIONS[i % OPERATIONS.length] + "\"}";
+    }
+  }
+
+  @Benchmark
+  public Map<Integer, Operation> parseAndAggregate() throws JsonProcessingException {
+    SpecChangeAggregator aggregator = new SpecChangeAggregator(200L, 2_000L);
+    for (String payload : payloads) {
+      aggregator.addPayload(mapper, payload);
+    }
+    return aggregator.drain();
+  }
+}
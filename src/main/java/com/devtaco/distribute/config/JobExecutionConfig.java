@@ -0,0 +1,76 @@
+package com.devtaco.distribute.config;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.devtaco.distribute.job.VirtualThreadJobExecutorServiceHandler;
+import com.devtaco.distribute.util.ExecutionThreads;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * job 을 어떤 방식으로 등록하고 실행할지에 대한 설정. <p>
+ * groupByCron 이 true 면, 같은 cron 을 가진 spec 들을 하나의 elastic job 으로 묶어서 돌린다. <p>
+ * virtualThreads 가 true 면 job 본문과 외부 http 호출을 virtual thread 에서 돌린다. ( java 21 이상에서 실행할 때만 )
+ */
+@Configuration
+@ConfigurationProperties(prefix = "application.job-execution")
+@Getter
+@Setter
+public class JobExecutionConfig {
+
+  /** 같은 cron 의 spec 들을 하나의 job 으로 묶을지 여부 */
+  private boolean groupByCron = false;
+
+  /** group job 하나를 몇 개의 shard 로 나눌지. member spec 들이 id 기준으로 나뉜다. */
+  private int groupShardingTotalCount = 1;
+
+  /** group job 의 member 들을 실행할 worker thread 개수 */
+  private int groupWorkerPoolSize = 8;
+
+  /** startup 시 job 들을 동시에 등록할 thread 개수 */
+  private int registrationParallelism = 8;
+
+  /** job 본문 / group member / blocking http 호출을 virtual thread 에서 돌릴지 여부 */
+  private boolean virtualThreads = false;
+
+  /** provider 하나에 동시에 나갈 수 있는 http 요청 수 */
+  private int maxConcurrentRequestsPerProvider = 16;
+
+  @PostConstruct
+  public void applyThreadMode() {
+    ExecutionThreads.getInstance().configure(virtualThreads, maxConcurrentRequestsPerProvider);
+  }
+
+  /**
+   * @return elastic job 이 job 을 실행할 executor 종류. null 이면 elastic job 기본값( CPU )
+   */
+  public String getJobExecutorServiceHandlerType() {
+    return ExecutionThreads.getInstance().isVirtualThreads() ? VirtualThreadJobExecutorServiceHandler.TYPE : null;
+  }
+
+  /**
+   * group job 들이 공유하는 worker pool. <p>
+   * thread 개수는 고정이고, 같은 시각에 몰리는 member 들은 queue 에서 기다린다. <p>
+   * virtual thread 모드면 member 마다 virtual thread 를 하나씩 쓴다.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService groupJobWorkerPool() {
+    if (ExecutionThreads.getInstance().isVirtualThreads()) {
+      return ExecutionThreads.newVirtualThreadPerTaskExecutor("group-job-worker-");
+    }
+    return new ThreadPoolExecutor(groupWorkerPoolSize, groupWorkerPoolSize, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), threadFactory("group-job-worker", false));
+  }
+}
@@ -2,11 +2,14 @@ package com.devtaco.distribute.config;
 
 import static okhttp3.internal.Util.threadFactory;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Cache;
 import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
 import okhttp3.Dispatcher;
@@ -15,13 +18,27 @@ import okhttp3.OkHttpClient;
 /**
  * 외부로 API Call 이 있을 경우 사용한다. <p>
  * OkHttpClient Pool 을 만들어 사용한다. <p>
- * client pool size : 3
+ * client pool size : 3 <p>
+ * GET 응답은 disk cache 에 ETag / Last-Modified 와 함께 저장해두고, 다음 요청 때 조건부 요청( If-None-Match 등 ) 으로 확인한다. <p>
+ * cache 위치( -Ddistribute.http-cache.dir ) 를 주지 않으면 cache 를 쓰지 않는다.
  */
+@Slf4j
 public class OkHttpClientConfig {
 
+  /** response cache 최대 크기. 넘으면 오래 안 쓴 응답부터 지운다. ( LRU ) */
+  private static final long RESPONSE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+  /**
+   * response cache 위치. instance 마다 다른 directory 여야 한다. ( 같은 directory 를 두 process 가 쓰면 cache 가 깨진다 ) <p>
+   * 인증 header 로 받은 응답도 저장되므로, 이 process 의 사용자만 읽을 수 있게 만든다.
+   */
+  private static final String RESPONSE_CACHE_DIR_PROPERTY = "distribute.http-cache.dir";
+
   private OkHttpClient okHttpClient;
   private OkHttpClient pingOkHttpClient;
 
+  private Cache responseCache;
+
   private static OkHttpClientConfig INSTANCE = new OkHttpClientConfig();
 
   public static OkHttpClientConfig getInstance() {
@@ -29,6 +46,7 @@ public class OkHttpClientConfig {
   }
 
   private OkHttpClientConfig() {
+    this.responseCache = createResponseCache();
     this.pingOkHttpClient = getPingOkHttpClient();
     this.okHttpClient = getOkHttpClientWithPing();
   }
@@ -41,13 +59,48 @@ public class OkHttpClientConfig {
     return this.pingOkHttpClient;
   }
 
+  /**
+   * 외부 provider 의 GET 응답을 저장하는 disk cache. hit / network count 는 cache 객체에서 확인한다.
+   * @return cache 위치를 주지 않았으면 null
+   */
+  public Cache getResponseCache() {
+    return this.responseCache;
+  }
+
+  private Cache createResponseCache() {
+    String dir = System.getProperty(RESPONSE_CACHE_DIR_PROPERTY);
+    if (null == dir || dir.isBlank()) {
+      log.info("http response cache is disabled. set -D{} to enable it", RESPONSE_CACHE_DIR_PROPERTY);
+      return null;
+    }
+
+    File cacheDir = new File(dir);
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      log.warn("can not create http response cache dir {}, cache is disabled", cacheDir);
+      return null;
+    }
+    // owner 만 읽고 쓸 수 있게 한다.
+    cacheDir.setReadable(false, false);
+    cacheDir.setReadable(true, true);
+    cacheDir.setWritable(false, false);
+    cacheDir.setWritable(true, true);
+    cacheDir.setExecutable(false, false);
+    cacheDir.setExecutable(true, true);
+    return new Cache(cacheDir, RESPONSE_CACHE_MAX_BYTES);
+  }
+
+  /** dispatcher 가 동시에 돌리는 async 요청 수 */
+  private static final int MAX_REQUESTS = 128;
+
   private OkHttpClient createOkHttpClient() {
+    // 동시 요청 수는 dispatcher 의 maxRequests 가 제한한다. executor 의 thread 수까지 제한하면,
+    // 끝나가는 요청의 thread 가 아직 반납되기 전에 다음 요청을 넘길 때 거절( executor rejected ) 될 수 있다. ( okhttp 기본값과 같이 둔다 )
     ThreadPoolExecutor dispatcherExecutor = new ThreadPoolExecutor(3, Integer.MAX_VALUE, 60,
         TimeUnit.SECONDS,
         new SynchronousQueue<Runnable>(), threadFactory("OK-Dispatcher", false));
 
     Dispatcher commonDispatcher = new Dispatcher(dispatcherExecutor);
-    commonDispatcher.setMaxRequests(128);
+    commonDispatcher.setMaxRequests(MAX_REQUESTS);
     commonDispatcher.setMaxRequestsPerHost(16);
 
     ConnectionPool commonConnectionPool = new ConnectionPool(128, 5, TimeUnit.MINUTES);
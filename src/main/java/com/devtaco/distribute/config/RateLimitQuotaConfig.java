@@ -0,0 +1,52 @@
+package com.devtaco.distribute.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.shardingsphere.elasticjob.reg.base.CoordinatorRegistryCenter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.devtaco.distribute.util.ClusterRateLimitQuota;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * provider 요청 quota 를 cluster 전체에서 나눠 쓰기 위한 설정. <p>
+ * clusterWide 가 true 면 node 가 몇 개든 provider 별 초당 요청 수가 budgetPerSec 을 넘지 않는다. <p>
+ * budget 은 모든 node 가 같은 counter 를 나눠 쓰므로 모든 node 에 같은 값을 설정한다.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "application.rate-limit-quota")
+@Getter
+@Setter
+public class RateLimitQuotaConfig {
+
+  /** cluster 전체에서 quota 를 나눠 쓸지 여부. false 면 node 마다 따로 제한한다. */
+  private boolean clusterWide = false;
+
+  /** ZooKeeper 에서 한 번에 빌려오는 token 수. 클수록 ZooKeeper 접근이 줄지만 node 간 분배가 거칠어진다. */
+  private int leaseBlockSize = 5;
+
+  /** budget 이 적용되는 시간 단위(ms) */
+  private long windowMillis = 1000L;
+
+  /** budgetPerSec 에 없는 provider 의 cluster 전체 초당 요청 수 */
+  private int defaultBudgetPerSec = 10;
+
+  /** provider -> cluster 전체 초당 요청 수 */
+  private Map<String, Integer> budgetPerSec = new HashMap<>();
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(prefix = "application.rate-limit-quota", name = "clusterWide", havingValue = "true")
+  public ClusterRateLimitQuota clusterRateLimitQuota(CoordinatorRegistryCenter elasticJobRegCenter) {
+    ClusterRateLimitQuota quota = new ClusterRateLimitQuota(
+        (CuratorFramework) elasticJobRegCenter.getRawClient(), leaseBlockSize, windowMillis, defaultBudgetPerSec, budgetPerSec);
+    RateLimitRuleConfig.getInstance().setClusterQuota(quota);
+    return quota;
+  }
+}
@@ -1,27 +1,81 @@
 package com.devtaco.distribute.config;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.devtaco.distribute.util.ClusterRateLimitQuota;
 import com.devtaco.distribute.util.HttpRequestUtils;
+import com.devtaco.distribute.util.RateLimitStateStore;
 
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
-import io.github.bucket4j.local.LocalBucketBuilder;
+import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.ConsumptionProbe;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * REST 요청 시 limit rule 을 설정해둔다. 과도한 요청 방지 <p>
- * 1sec에 10번 , 1nanoSec 에 1번으로 제한을 해두었다.
+ * provider 마다 초당 요청 수( rate ) 를 두고, 1sec 에 rate 번, 1/rate sec 에 1번으로 제한한다. 처음 rate 는 10 이다. <p>
+ * rate 는 응답에 따라 바뀐다. ( AIMD ) <p>
+ * - 429 를 받으면 절반으로 줄이고, Retry-After 만큼 token 을 주지 않는다. 마지막으로 줄이기 전에 보낸 요청의 429 로는 다시 줄이지 않는다. <p>
+ * - 연속으로 SUCCESS_STREAK_FOR_INCREASE 번 성공하면 1 씩 늘린다. <p>
+ * 학습한 rate 는 file 에 저장해서 재시작 후에도 이어서 쓴다. <p>
+ * cluster quota 가 설정되면 rate 는 node 하나가 아니라 cluster 전체의 초당 요청 수가 된다. ( {@link ClusterRateLimitQuota} )
  */
 @Slf4j
 public class RateLimitRuleConfig {
 
-  private LocalBucketBuilder bucketBuilder;
-  private ConcurrentHashMap<String, Bucket> limiterMap;
+  private static final int INITIAL_RATE_PER_SEC = 10;
+  private static final int MIN_RATE_PER_SEC = 1;
+  private static final int MAX_RATE_PER_SEC = 100;
 
-  private Bandwidth limitTenPerSec;
-  private Bandwidth limitOnePerMilliSec;
+  /** 이만큼 연속으로 성공하면 rate 를 1 올린다. */
+  private static final int SUCCESS_STREAK_FOR_INCREASE = 50;
+
+  /** 학습한 rate 를 저장할 file. system property 로 바꿀 수 있다. */
+  private static final String STATE_FILE_PROPERTY = "distribute.rate-limit.file";
+
+  /** provider 하나의 rate 와 bucket */
+  private static class ProviderLimit {
+    private final int ratePerSec;
+    private final Bucket bucket;
+    private final AtomicInteger successStreak = new AtomicInteger();
+
+    /** 마지막으로 rate 를 줄인 시각( nanoTime ). 이 전에 보낸 요청의 429 로는 다시 줄이지 않는다. */
+    private final long decreasedAtNanos;
+
+    /** 이 시각( nanoTime ) 까지는 token 을 주지 않는다. ( Retry-After ) */
+    private volatile long pausedUntilNanos;
+
+    ProviderLimit(int ratePerSec, long decreasedAtNanos) {
+      this.ratePerSec = ratePerSec;
+      this.decreasedAtNanos = decreasedAtNanos;
+      this.bucket = Bucket4j.builder()
+          .addLimit(Bandwidth.simple(ratePerSec, Duration.ofSeconds(1)))
+          .addLimit(Bandwidth.simple(1, Duration.ofNanos(TimeUnit.SECONDS.toNanos(1) / ratePerSec)))
+          .build();
+    }
+
+    long pausedNanos() {
+      return Math.max(0L, pausedUntilNanos - System.nanoTime());
+    }
+  }
+
+  private final ConcurrentHashMap<String, ProviderLimit> limiterMap = new ConcurrentHashMap<>();
+
+  /** 재시작 전에 학습한 rate. 처음 등록할 때 사용한다. */
+  private final Map<String, Integer> learnedRates;
+
+  private final RateLimitStateStore stateStore;
+
+  /** null 이면 node 마다 따로 제한한다. */
+  private volatile ClusterRateLimitQuota clusterQuota;
 
   private static RateLimitRuleConfig instance = new RateLimitRuleConfig();
 
@@ -30,62 +84,179 @@ public class RateLimitRuleConfig {
   }
 
   private RateLimitRuleConfig() {
-    initialize();
+    // 같은 host 의 다른 instance 와 섞이지 않도록, 공용 tmp 가 아니라 instance 의 작업 directory 에 둔다.
+    this(Paths.get(System.getProperty(STATE_FILE_PROPERTY,
+        Paths.get(System.getProperty("user.dir"), "distribute-rate-limits.properties").toString())));
   }
 
   /**
-   * {@link HttpRequestUtils } 에서 사용한다
-   * <p>
-   * bean 들이 올라오는 도중에 이 method 를 사용할 경우 이 config의 객체 초기화에 실패한다.
-   * <p>
-   * 없으면 null check 를 하고 만들도록 initialize 한다.
+   * @param stateFile 학습한 rate 를 저장할 file
    */
-  private void initialize() {
-
-    if (null == this.bucketBuilder) {
-      this.bucketBuilder = new LocalBucketBuilder();
+  RateLimitRuleConfig(Path stateFile) {
+    this.stateStore = new RateLimitStateStore(stateFile);
+    this.learnedRates = new ConcurrentHashMap<>(stateStore.load());
+    if (!learnedRates.isEmpty()) {
+      log.info("learned rate limits loaded: {}", learnedRates);
     }
+  }
 
-    if (null == this.limiterMap) {
-      this.limiterMap = new ConcurrentHashMap<>();
-    }
+  /**
+   * provider 를 등록한다. 이전에 학습한 rate 가 있으면 그 rate 로 시작한다.
+   */
+  public void addLimiter(String apiProvider) {
+    limiterMap.computeIfAbsent(apiProvider, provider -> new ProviderLimit(
+        clampRate(learnedRates.getOrDefault(provider, INITIAL_RATE_PER_SEC)), System.nanoTime()));
+  }
+
+  /**
+   * node 들이 quota 를 나눠 쓰도록 한다. {@link RateLimitQuotaConfig} 가 startup 시 호출한다.
+   */
+  public void setClusterQuota(ClusterRateLimitQuota clusterQuota) {
+    this.clusterQuota = clusterQuota;
+  }
+
+  /**
+   * cluster quota 에서 token 하나를 얻는다. cluster quota 를 쓰지 않으면 항상 얻는다. <p>
+   * budget 은 모든 node 가 같이 쓰는 설정값( {@link RateLimitQuotaConfig} ) 이다. node 마다 배운 rate 는 local bucket 에만 쓴다.
+   *
+   * @return 0 이면 얻음. 아니면 기다려야 하는 시간(ns)
+   */
+  public long acquireClusterToken(String provider) {
+    ClusterRateLimitQuota quota = this.clusterQuota;
+    return null == quota ? 0L : quota.tryAcquire(provider);
+  }
 
-    if (null == this.limitTenPerSec) {
-      this.limitTenPerSec = Bandwidth.simple(10, Duration.ofSeconds(1));
+  /**
+   * {@link #acquireClusterToken(String)} 로 얻은 token 을 local bucket 에서 거절당해 쓰지 못했을 때 돌려놓는다.
+   */
+  public void releaseClusterToken(String provider) {
+    ClusterRateLimitQuota quota = this.clusterQuota;
+    if (null != quota) {
+      quota.release(provider);
     }
+  }
 
-    if (null == this.limitOnePerMilliSec) {
-      this.limitOnePerMilliSec = Bandwidth.simple(1, Duration.ofMillis(100));
+  /**
+   * bucket의 token 을 사용할 수 있는지 없는지를 return
+   * 만약, bucket 에 등록된 provider 가 아니면 등록부터 한다.
+   * {@link HttpRequestUtils } 에서 사용한다
+   */
+  public boolean checkRateLimitBy(String provider) {
+    ProviderLimit limit = limitOf(provider);
+    if (limit.pausedNanos() > 0 || acquireClusterToken(provider) > 0) {
+      return false;
+    }
+    if (limit.bucket.tryConsume(1)) {
+      return true;
     }
+    releaseClusterToken(provider);
+    return false;
   }
 
-  public void addLimiter(String apiProvider) {
-    if (null == this.bucketBuilder) {
-      log.info("bucketBuilder not yet created --> create new bucketBuilder");
-      initialize();
+  /**
+   * token 을 1개 소비해보고, 그 결과를 return 한다. <p>
+   * 소비하지 못한 경우 probe 의 getNanosToWaitForRefill() 로 다음 token 까지 남은 시간(ns)을 알 수 있다.
+   * Retry-After 로 멈춘 상태인지는 {@link #getPausedNanos(String)} 로 먼저 확인한다.
+   * {@link com.devtaco.distribute.util.AsyncRateLimiter} 에서 사용한다.
+   */
+  public ConsumptionProbe tryConsumeBy(String provider) {
+    return limitOf(provider).bucket.tryConsumeAndReturnRemaining(1);
+  }
+
+  /**
+   * @return Retry-After 등으로 멈춘 경우 남은 시간(ns). 멈추지 않았으면 0
+   */
+  public long getPausedNanos(String provider) {
+    return limitOf(provider).pausedNanos();
+  }
+
+  public int getRatePerSec(String provider) {
+    return limitOf(provider).ratePerSec;
+  }
+
+  /**
+   * 성공 응답을 받았을 때 호출한다. 연속 성공이 쌓이면 rate 를 1 올린다.
+   */
+  public void onSuccess(String provider) {
+    ProviderLimit limit = limitOf(provider);
+    if (limit.successStreak.incrementAndGet() >= SUCCESS_STREAK_FOR_INCREASE) {
+      changeRate(provider, limit, limit.ratePerSec + 1);
     }
+  }
 
-    Bucket limiter = null;
+  /**
+   * 429 를 받았을 때 호출한다. rate 를 절반으로 줄이고, pauseNanos 동안 token 을 주지 않는다. <p>
+   * 한 번에 몰린 요청들이 같이 429 를 받아도 한 번만 줄이도록, 마지막으로 줄인 뒤에 보낸 요청의 429 일 때만 줄인다.
+   *
+   * @param sentAtNanos 429 를 받은 요청을 보낸 시각( nanoTime )
+   * @param pauseNanos  Retry-After 로 받은 시간. 모르면 0
+   */
+  public void onThrottled(String provider, long sentAtNanos, long pauseNanos) {
+    ProviderLimit limit = limitOf(provider);
+    limit.successStreak.set(0);
+    if (sentAtNanos - limit.decreasedAtNanos < 0) {
+      pause(limit, pauseNanos);
+      return;
+    }
+    ProviderLimit changed = changeRate(provider, limit, limit.ratePerSec / 2);
+    pause(changed, pauseNanos);
+  }
 
-    limiter = this.bucketBuilder.addLimit(limitTenPerSec).addLimit(limitOnePerMilliSec).build();
-    limiter.getAvailableTokens();
+  /**
+   * rate 는 그대로 두고, pauseNanos 동안 token 을 주지 않는다. ( 남은 quota 가 0 이라고 알려준 경우 )
+   */
+  public void pause(String provider, long pauseNanos) {
+    pause(limitOf(provider), pauseNanos);
+  }
 
-    this.limiterMap.put(apiProvider, limiter);
+  private void pause(ProviderLimit limit, long pauseNanos) {
+    if (pauseNanos <= 0) {
+      return;
+    }
+    long until = System.nanoTime() + pauseNanos;
+    synchronized (limit) {
+      if (until - limit.pausedUntilNanos > 0) {
+        limit.pausedUntilNanos = until;
+      }
+    }
   }
 
   /**
-   * bucket의 token 을 사용할 수 있는지 없는지를 return
-   * 만약, bucket 에 등록된 provider 가 아니면 등록부터 한다.
+   * rate 가 바뀌면 bucket 을 새로 만들어 바꿔 넣고, 학습한 rate 를 저장한다. <p>
+   * 저장은 요청을 처리하는 thread 를 막지 않도록 {@link RateLimitStateStore#saveAsync(java.util.function.Supplier)} 로 한다.
+   *
+   * @return 지금 provider 에 걸려있는 limit
    */
-  public boolean checkRateLimitBy(String provider) {
+  private ProviderLimit changeRate(String provider, ProviderLimit current, int newRate) {
+    int rate = clampRate(newRate);
+    if (rate == current.ratePerSec) {
+      current.successStreak.set(0);
+      return current;
+    }
 
-    if (!limiterMap.containsKey(provider)) {
-      addLimiter(provider);
+    long decreasedAtNanos = rate < current.ratePerSec ? System.nanoTime() : current.decreasedAtNanos;
+    ProviderLimit changed = new ProviderLimit(rate, decreasedAtNanos);
+    changed.pausedUntilNanos = current.pausedUntilNanos;
+    if (!limiterMap.replace(provider, current, changed)) {
+      return limitOf(provider); // 다른 thread 가 먼저 바꿈
     }
 
-    Bucket limiter = this.limiterMap.get(provider);
-    return limiter.tryConsume(1);
+    log.info("rate limit of {} changed {} -> {} per sec", provider, current.ratePerSec, rate);
+    learnedRates.put(provider, rate);
+    stateStore.saveAsync(() -> new HashMap<>(learnedRates));
+    return changed;
+  }
 
+  private ProviderLimit limitOf(String provider) {
+    ProviderLimit limit = limiterMap.get(provider);
+    if (null == limit) {
+      addLimiter(provider);
+      limit = limiterMap.get(provider);
+    }
+    return limit;
   }
 
+  private static int clampRate(int rate) {
+    return Math.max(MIN_RATE_PER_SEC, Math.min(MAX_RATE_PER_SEC, rate));
+  }
 }
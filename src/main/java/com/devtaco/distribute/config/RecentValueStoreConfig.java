@@ -0,0 +1,23 @@
+package com.devtaco.distribute.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * spec 별 최근 값을 memory 에 들고 있는 {@link com.devtaco.distribute.repository.RecentValueStore} 설정.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "application.recent-value-store")
+@Getter
+@Setter
+public class RecentValueStoreConfig {
+
+  /** spec 하나에 들고 있을 최근 값의 개수. 넘으면 오래된 것부터 덮어쓴다. */
+  private int pointsPerSpec = 120;
+
+  /** startup 시 DB 의 최근 값으로 채울지 여부 */
+  private boolean loadOnStartup = true;
+}
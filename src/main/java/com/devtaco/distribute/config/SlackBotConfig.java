@@ -6,8 +6,10 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
 import lombok.Getter;
+import lombok.Setter;
 
 @Getter
+@Setter
 @Configuration
 @ConfigurationProperties(prefix = "slack")
 public class SlackBotConfig {
@@ -18,4 +20,10 @@ public class SlackBotConfig {
   private String channel;
   private String token;
 
+  /** 전송 대기중인 alert 을 최대 몇 개까지 쌓아둘지. 넘치면 log 로만 남긴다. */
+  private int queueCapacity = 1000;
+
+  /** 이 시간 동안 들어온 alert 들을 하나의 message 로 묶어서 보낸다. */
+  private long flushWindowMillis = 1000L;
+
 }
@@ -0,0 +1,23 @@
+package com.devtaco.distribute.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 값 조회 API 인 {@link com.devtaco.distribute.service.ValueQueryService} 설정.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "application.value-query")
+@Getter
+@Setter
+public class ValueQueryConfig {
+
+  /**
+   * 이 시간 동안 새 값이 들어오지 않은 spec 은 DB 에서 최신 값을 다시 확인한다. ( spec 하나에 이 간격마다 최대 한 번 ) <p>
+   * 다른 node 가 계산해서 저장한 값은 이 시간만큼 늦게 보일 수 있다. DB 에 값이 없던 spec 도 이 간격으로만 다시 확인한다.
+   */
+  private long dbRefreshMillis = 5_000L;
+}
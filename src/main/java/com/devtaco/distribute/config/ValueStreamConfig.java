@@ -0,0 +1,38 @@
+package com.devtaco.distribute.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 새로 계산된 값을 SSE 로 내보내는 {@link com.devtaco.distribute.service.ValueStreamService} 설정.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "application.value-stream")
+@Getter
+@Setter
+public class ValueStreamConfig {
+
+  /** 동시에 붙을 수 있는 최대 구독자 수 */
+  private int maxSubscribers = 1000;
+
+  /** 구독자 하나가 보내지 못하고 쌓아둘 수 있는 event 수. 넘으면 오래된 것부터 버리고, 나중에 최근 값 ring 에서 다시 채운다. */
+  private int subscriberBufferSize = 256;
+
+  /**
+   * 다시 채울 때( buffer 를 넘쳤거나 Last-Event-ID 로 다시 붙은 경우 ) 보내는 최대 event 수.
+   * 넘으면 spec 별 최신 값만 보내고, 그것도 넘으면 reset event 만 보낸다.
+   */
+  private int maxReplaySize = 1000;
+
+  /** 구독자에게 event 를 보내는 thread 수 */
+  private int senderThreads = 4;
+
+  /** 연결을 유지하는 최대 시간. 끊기면 client 가 Last-Event-ID 로 다시 붙는다. */
+  private long timeoutMillis = 30 * 60 * 1000L;
+
+  /** 값이 없어도 이 간격으로 comment 를 보내서 끊긴 연결을 찾는다. */
+  private long heartbeatIntervalMillis = 15_000L;
+}
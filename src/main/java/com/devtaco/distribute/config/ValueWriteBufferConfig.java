@@ -0,0 +1,30 @@
+package com.devtaco.distribute.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 계산된 값을 모아서 batch 로 저장하는 write-behind buffer 설정. <p>
+ * batchSize 만큼 모이거나, 첫 값이 들어온 뒤 flushIntervalMillis 가 지나면 저장한다.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "application.value-write-buffer")
+@Getter
+@Setter
+public class ValueWriteBufferConfig {
+
+  /** buffer 에 쌓아둘 수 있는 최대 개수 */
+  private int capacity = 10_000;
+
+  /** 한 번에 저장할 최대 개수 */
+  private int batchSize = 500;
+
+  /** 첫 값이 들어온 뒤 이 시간이 지나면 batchSize 가 안 되어도 저장한다. */
+  private long flushIntervalMillis = 200L;
+
+  /** buffer 가 가득 찼을 때 job thread 가 기다리는 최대 시간. 넘으면 직접 저장한다. */
+  private long offerTimeoutMillis = 1_000L;
+}
@@ -0,0 +1,130 @@
+package com.devtaco.distribute.controller;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.devtaco.distribute.service.ValueQueryService;
+import com.devtaco.distribute.service.ValueStreamService;
+
+/**
+ * 계산된 값 조회 API. 값은 memory 에서 읽는다. 다른 node 가 계산한 spec 만 가끔 DB 를 확인한다. ( {@link ValueQueryService} ) <p>
+ * 모든 응답에 strong ETag 를 붙인다. ETag 는 값의 시각으로 만들므로 어느 node 에서 받아도 같다.
+ * If-None-Match 가 같으면 body 를 만들지 않고 304 를 준다. <p>
+ * 값은 cron 마다 바뀌므로, client 가 매번 ETag 로 확인하도록 no-cache 로 내보낸다. <p>
+ * polling 대신 /values/stream 으로 새 값을 push 받을 수 있다.
+ */
+@RestController
+@RequestMapping("/values")
+public class ValueController {
+
+  /** 한 번에 조회할 수 있는 최대 id 개수 */
+  private static final int MAX_BULK_IDS = 500;
+
+  private final ValueQueryService valueQueryService;
+
+  private final ValueStreamService valueStreamService;
+
+  public ValueController(ValueQueryService valueQueryService, ValueStreamService valueStreamService) {
+    this.valueQueryService = valueQueryService;
+    this.valueStreamService = valueStreamService;
+  }
+
+  /**
+   * 가장 최근 값
+   */
+  @GetMapping("/{id}")
+  public ResponseEntity<ValueResponse> getLatest(@PathVariable int id, WebRequest request) {
+    String etag = valueQueryService.etagOf(id);
+    if (null == etag) {
+      return ResponseEntity.notFound().build();
+    }
+    if (request.checkNotModified(etag)) {
+      return null;
+    }
+
+    ValueResponse response = valueQueryService.getLatest(id);
+    if (null == response) {
+      return ResponseEntity.notFound().build();
+    }
+    return ok(etag, response);
+  }
+
+  /**
+   * memory 에 남아있는 최근 값들. 더 오래된 값은 DB 에서 조회한다.
+   *
+   * @param from 이 시각( valueTsMillis ) 이후의 값만 준다.
+   */
+  @GetMapping("/{id}/history")
+  public ResponseEntity<ValueHistoryResponse> getHistory(@PathVariable int id,
+      @RequestParam(defaultValue = "0") long from, WebRequest request) {
+    String etag = valueQueryService.etagOf(id);
+    if (null == etag) {
+      return ResponseEntity.notFound().build();
+    }
+    if (request.checkNotModified(etag)) {
+      return null;
+    }
+
+    ValueHistoryResponse response = valueQueryService.getHistory(id, from);
+    if (null == response) {
+      return ResponseEntity.notFound().build();
+    }
+    return ok(etag, response);
+  }
+
+  /**
+   * 여러 spec 의 가장 최근 값. 값이 없는 id 는 빠진다. <p>
+   * 예) GET /values?ids=1,2,3
+   */
+  @GetMapping
+  public ResponseEntity<List<ValueResponse>> getLatest(@RequestParam List<Integer> ids, WebRequest request) {
+    Set<Integer> uniqueIds = new LinkedHashSet<>(ids);
+    if (uniqueIds.size() > MAX_BULK_IDS) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "too many ids. max: " + MAX_BULK_IDS);
+    }
+
+    String etag = valueQueryService.etagOf(uniqueIds);
+    if (request.checkNotModified(etag)) {
+      return null;
+    }
+    return ok(etag, valueQueryService.getLatest(uniqueIds));
+  }
+
+  /**
+   * 새로 계산된 값을 SSE 로 받는다. 다시 붙을 때 Last-Event-ID 를 보내면 놓친 값부터 받는다. <p>
+   * 예) GET /values/stream?ids=1,2,3
+   *
+   * @param ids 받을 spec id 들. 없으면 전체
+   */
+  @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter stream(@RequestParam(required = false) List<Integer> ids,
+      @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+    SseEmitter emitter = valueStreamService.subscribe(ids, lastEventId);
+    if (null == emitter) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "too many subscribers");
+    }
+    return emitter;
+  }
+
+  private static <T> ResponseEntity<T> ok(String etag, T body) {
+    return ResponseEntity.ok()
+        .eTag(etag)
+        .cacheControl(CacheControl.noCache())
+        .body(body);
+  }
+}
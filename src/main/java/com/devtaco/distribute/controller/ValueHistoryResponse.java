@@ -0,0 +1,38 @@
+package com.devtaco.distribute.controller;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * 조회 API 로 나가는 spec 하나의 최근 값들. 오래된 것부터 정렬되어 있다.
+ */
+@Getter
+public class ValueHistoryResponse {
+
+  @Getter
+  public static class Point {
+    private final BigDecimal value;
+    private final long valueTsMillis;
+    private final long calculateTsMillis;
+
+    public Point(BigDecimal value, long valueTsMillis, long calculateTsMillis) {
+      this.value = value;
+      this.valueTsMillis = valueTsMillis;
+      this.calculateTsMillis = calculateTsMillis;
+    }
+  }
+
+  private final int id;
+
+  private final String valueName;
+
+  private final List<Point> points;
+
+  public ValueHistoryResponse(int id, String valueName, List<Point> points) {
+    this.id = id;
+    this.valueName = valueName;
+    this.points = points;
+  }
+}
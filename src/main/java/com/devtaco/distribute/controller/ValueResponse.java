@@ -0,0 +1,37 @@
+package com.devtaco.distribute.controller;
+
+import java.math.BigDecimal;
+
+import com.devtaco.distribute.model.ImplValue;
+
+import lombok.Getter;
+
+/**
+ * 조회 API 로 나가는 계산 값 하나.
+ */
+@Getter
+public class ValueResponse {
+
+  private final int id;
+
+  private final String valueName;
+
+  private final BigDecimal value;
+
+  private final long valueTsMillis;
+
+  private final long calculateTsMillis;
+
+  public ValueResponse(int id, String valueName, BigDecimal value, long valueTsMillis, long calculateTsMillis) {
+    this.id = id;
+    this.valueName = valueName;
+    this.value = value;
+    this.valueTsMillis = valueTsMillis;
+    this.calculateTsMillis = calculateTsMillis;
+  }
+
+  public static ValueResponse of(String valueName, ImplValue value) {
+    return new ValueResponse(value.getId(), valueName, value.getValue(), value.getValueTsMillis(),
+        value.getCalculateTsMillis());
+  }
+}
@@ -0,0 +1,113 @@
+package com.devtaco.distribute.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.shardingsphere.elasticjob.api.ShardingContext;
+
+import com.devtaco.distribute.job.jobImpl.ImplTask;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 같은 cron expression 을 가진 spec 들을 하나로 묶은 batch job. <p>
+ * spec 마다 elastic job( scheduler, zk node ) 을 만드는 대신, cron 하나당 job 하나만 등록한다. <p>
+ * 실행 시점이 되면 member 들의 {@link ImplTask#runCalculation()} 을 공유 worker pool 에서 돌리고, 모두 끝날 때까지 기다린다. <p>
+ * spec 의 추가/삭제는 member 목록만 바꾸므로 elastic job 쪽에는 영향이 없다.
+ */
+@Slf4j
+public class CronGroupTask implements DistributeTask {
+
+  /** group 의 기준이 되는 canonical cron expression */
+  @Getter
+  private final String cronExpression;
+
+  /** spec id -> task */
+  private final ConcurrentHashMap<Integer, ImplTask> members = new ConcurrentHashMap<>();
+
+  private final ExecutorService workerPool;
+
+  public CronGroupTask(String cronExpression, ExecutorService workerPool) {
+    this.cronExpression = cronExpression;
+    this.workerPool = workerPool;
+  }
+
+  public void addMember(ImplTask task) {
+    members.put(task.getSpec().getId(), task);
+  }
+
+  /**
+   * @return member 가 아니면 null
+   */
+  public ImplTask getMember(int specId) {
+    return members.get(specId);
+  }
+
+  /**
+   * @return member 였으면 true
+   */
+  public boolean removeMember(int specId) {
+    return null != members.remove(specId);
+  }
+
+  public boolean isEmpty() {
+    return members.isEmpty();
+  }
+
+  public int size() {
+    return members.size();
+  }
+
+  @Override
+  public void initialize() {
+    // member 들이 각자 초기화한다.
+  }
+
+  /**
+   * shard 구분 없이 모든 member 를 계산한다.
+   */
+  @Override
+  public void calculate() {
+    runMembers(0, 1);
+  }
+
+  @Override
+  public boolean validateCalculation() {
+    // 검증은 member 들이 각자 한다.
+    return true;
+  }
+
+  /**
+   * group job 이 여러 shard 로 나뉘면, spec id 기준으로 자신의 몫에 해당하는 member 만 돌린다.
+   */
+  @Override
+  public void execute(ShardingContext shardingContext) {
+    runMembers(shardingContext.getShardingItem(), shardingContext.getShardingTotalCount());
+  }
+
+  private void runMembers(int shardingItem, int shardingTotalCount) {
+    List<Future<?>> futures = new ArrayList<>(members.size());
+    for (ImplTask member : members.values()) {
+      if (Math.floorMod(member.getSpec().getId(), shardingTotalCount) == shardingItem) {
+        futures.add(workerPool.submit(member::runCalculation));
+      }
+    }
+
+    // 다음 회차와 겹치지 않도록 이번 회차의 member 들이 모두 끝날 때까지 기다린다.
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        log.error("member of cron group [{}] failed", cronExpression, e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
@@ -23,7 +23,7 @@ public interface DistributeTask extends SimpleJob {
 
 	/**
 	 * 실제 계산 작업을 수행합니다.
-	 * 초기화된 데이터를 기반으로 계산하고 결과를 저장합니다.
+	 * 초기화된 데이터를 기반으로 계산합니다. 결과는 검증을 통과한 뒤에 저장합니다.
 	 */
 	void calculate();
 
@@ -0,0 +1,132 @@
+package com.devtaco.distribute.job;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.devtaco.distribute.util.CronUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link DistributeTask} 의 실행을 기록하는 micrometer meter 들. <p>
+ * /actuator/prometheus 로 노출된다. <p>
+ *
+ * - distribute.task.phase : 단계( initialize / calculate / validate ) 별 수행 시간. percentile 과 histogram 을 같이 낸다. <p>
+ * - distribute.task.retry : 검증 실패로 다시 계산한 횟수 <p>
+ * - distribute.task.schedule.lag : 마지막 실행이 cron 시각보다 늦게 시작한 시간(초) <p>
+ * - distribute.task.shard.lagging : 한 주기 넘게 늦게 시작해서 부분 결과를 버린 shard 실행 수 <p>
+ * - distribute.job.registration : 대량 등록( startup 등 ) 에 걸린 시간과 등록한 job 수
+ */
+@Component
+public class JobMetrics {
+
+  public static final String PHASE_INITIALIZE = "initialize";
+  public static final String PHASE_CALCULATE = "calculate";
+  public static final String PHASE_VALIDATE = "validate";
+
+  private static final String TAG_JOB = "job";
+  private static final String TAG_PHASE = "phase";
+
+  private final MeterRegistry registry;
+
+  /** job + phase -> timer. 매번 builder 로 registry 를 찾지 않도록 둔다. */
+  private final ConcurrentHashMap<String, Timer> phaseTimers = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, Counter> retryCounters = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, Counter> laggingShardCounters = new ConcurrentHashMap<>();
+
+  /** job -> 마지막 schedule lag(ms). gauge 가 이 값을 읽는다. */
+  private final ConcurrentHashMap<String, AtomicLong> scheduleLagMillis = new ConcurrentHashMap<>();
+
+  public JobMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * 단계 하나의 수행 시간을 기록한다. 예외가 나도 기록한다.
+   */
+  public void recordPhase(String jobName, String phase, Runnable task) {
+    phaseTimer(jobName, phase).record(task);
+  }
+
+  public <T> T recordPhase(String jobName, String phase, Supplier<T> task) {
+    return phaseTimer(jobName, phase).record(task);
+  }
+
+  /**
+   * {@link JobRegistration#registJobs(java.util.Collection)} 한 번의 결과를 기록한다.
+   */
+  public void recordRegistration(int registeredCount, long elapsedNanos) {
+    Timer.builder("distribute.job.registration")
+        .description("job 대량 등록에 걸린 시간")
+        .register(registry)
+        .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    Counter.builder("distribute.job.registered")
+        .description("대량 등록으로 등록한 job 수")
+        .register(registry)
+        .increment(registeredCount);
+  }
+
+  public void incrementRetry(String jobName) {
+    retryCounters.computeIfAbsent(jobName, name -> Counter.builder("distribute.task.retry")
+        .description("검증 실패로 다시 계산한 횟수")
+        .tag(TAG_JOB, name)
+        .register(registry))
+        .increment();
+  }
+
+  public void incrementLaggingShard(String jobName) {
+    laggingShardCounters.computeIfAbsent(jobName, name -> Counter.builder("distribute.task.shard.lagging")
+        .description("한 주기 넘게 늦게 시작해서 부분 결과를 버린 shard 실행 수")
+        .tag(TAG_JOB, name)
+        .register(registry))
+        .increment();
+  }
+
+  /**
+   * 이번 실행이 cron 상의 실행 시각보다 얼마나 늦게 시작했는지 기록한다.
+   *
+   * @param startedAt 실제 실행이 시작된 시간
+   */
+  public void recordScheduleLag(String jobName, String cronExpression, ZonedDateTime startedAt) {
+    // startedAt 이전의 마지막 실행 시각이 이번 실행의 예정 시각이다.
+    ZonedDateTime scheduledAt = CronUtils.previousExecutionDate(cronExpression, startedAt);
+    if (null == scheduledAt) {
+      return;
+    }
+
+    long lagMillis = Duration.between(scheduledAt, startedAt).toMillis();
+    scheduleLagMillis.computeIfAbsent(jobName, this::registerScheduleLagGauge).set(lagMillis);
+  }
+
+  private AtomicLong registerScheduleLagGauge(String jobName) {
+    AtomicLong lag = new AtomicLong();
+    Gauge.builder("distribute.task.schedule.lag", lag, value -> value.get() / 1000.0)
+        .description("마지막 실행이 cron 시각보다 늦게 시작한 시간")
+        .baseUnit("seconds")
+        .tag(TAG_JOB, jobName)
+        .register(registry);
+    return lag;
+  }
+
+  private Timer phaseTimer(String jobName, String phase) {
+    return phaseTimers.computeIfAbsent(jobName + '/' + phase, key -> Timer.builder("distribute.task.phase")
+        .description("DistributeTask 단계별 수행 시간")
+        .tag(TAG_JOB, jobName)
+        .tag(TAG_PHASE, phase)
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .publishPercentileHistogram()
+        .maximumExpectedValue(Duration.ofHours(1))
+        .register(registry));
+  }
+}
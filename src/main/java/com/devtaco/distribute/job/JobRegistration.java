@@ -1,24 +1,44 @@
 package com.devtaco.distribute.job;
 
+import static okhttp3.internal.Util.threadFactory;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.shardingsphere.elasticjob.api.JobConfiguration;
+import org.apache.shardingsphere.elasticjob.infra.pojo.JobConfigurationPOJO;
 import org.apache.shardingsphere.elasticjob.lite.api.bootstrap.impl.ScheduleJobBootstrap;
 import org.apache.shardingsphere.elasticjob.lite.internal.storage.JobNodePath;
 import org.apache.shardingsphere.elasticjob.lite.internal.storage.JobNodeStorage;
+import org.apache.shardingsphere.elasticjob.lite.lifecycle.api.JobConfigurationAPI;
 import org.apache.shardingsphere.elasticjob.lite.lifecycle.api.JobOperateAPI;
 import org.apache.shardingsphere.elasticjob.lite.lifecycle.internal.operate.JobOperateAPIImpl;
+import org.apache.shardingsphere.elasticjob.lite.lifecycle.internal.settings.JobConfigurationAPIImpl;
 import org.apache.shardingsphere.elasticjob.reg.base.CoordinatorRegistryCenter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import com.devtaco.distribute.job.jobImpl.ImpleTask;
+import com.devtaco.distribute.config.JobExecutionConfig;
+import com.devtaco.distribute.job.jobImpl.ImplTask;
 import com.devtaco.distribute.model.ImplSpec;
 import com.devtaco.distribute.model.JobSpec;
 import com.devtaco.distribute.repository.DataManager;
 import com.devtaco.distribute.service.SlackService;
+import com.devtaco.distribute.util.CronUtils;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,6 +59,18 @@ public class JobRegistration {
   /** 작업 이름에 사용될 prefix */
   private static final String JOB_PREFIX = "devtaco-ejob-";
 
+  /** cron group job 이름에 사용될 prefix */
+  private static final String CRON_GROUP_PREFIX = "cron-";
+
+  /** shard 를 instance 들에게 고르게 나누는 elastic job 기본 전략 */
+  private static final String SHARDING_STRATEGY_TYPE = "AVG_ALLOCATION";
+
+  /** 
+   * spec 의 cron expression 은 UTC 기준이다. 
+   * elasticJob 이 사용하는 scheduler 인 quartz 는 "GMT" 로 시작하는 timezone string 을 요구한다.
+   */
+  private static final String JOB_TIME_ZONE = "GMT+0";
+
   @Value("${spring.profiles.active}") 
   private String activeProfile;
 
@@ -48,6 +80,9 @@ public class JobRegistration {
   */
   private JobOperateAPI jobOperateAPI;
 
+  /** zk 에 저장된 job 설정을 읽고 바꾸는 API. spec 이 UPDATE 될 때 job 을 내리지 않고 설정만 바꾼다. */
+  private JobConfigurationAPI jobConfigurationAPI;
+
   /** repository 등등을 wrapping 한 facade... */
   private DataManager          dataManager;
 
@@ -57,16 +92,60 @@ public class JobRegistration {
   /** slack 채널로 alert 하기 위한 객체 */
   private SlackService                slackBot;
 
+  /** shard 별 부분 결과를 merge 하는 객체 */
+  private ShardResultMerger           resultMerger;
+
+  /** job 등록 방식 설정 ( cron group 여부 등 ) */
+  private JobExecutionConfig          executionConfig;
+
+  /** cron group job 의 member 들을 돌릴 worker pool */
+  private ExecutorService             groupWorkerPool;
+
+  /** job 실행 metric */
+  private JobMetrics                  jobMetrics;
+
+  /** zk 에 등록된 job 들의 local mirror */
+  private JobRegistryMirror           jobRegistryMirror;
+
+  /** spec id -> 등록된 task. ( group 모드가 아닐 때 ) 어떤 spec 으로 등록됐는지 알아야 UPDATE 때 비교할 수 있다. */
+  private final ConcurrentHashMap<Integer, ImplTask> registeredTasks = new ConcurrentHashMap<>();
+
+  /** canonical cron -> group job. 바꿀 때는 group 의 lock 을 잡는다. */
+  private final ConcurrentHashMap<String, CronGroupTask> cronGroups = new ConcurrentHashMap<>();
+
+  /** spec id -> 속해있는 group 의 cron. spec 의 cron 이 바뀌어도 이전 group 을 찾기 위해 둔다. */
+  private final ConcurrentHashMap<Integer, String> specGroupCron = new ConcurrentHashMap<>();
+
+  /**
+   * spec id -> lock. 같은 spec 의 등록 / 해제만 서로 기다리고, 다른 spec 들은 동시에 등록할 수 있다. <p>
+   * group 의 lock 은 항상 spec 의 lock 안에서 잡는다. ( 반대로 잡지 않는다 )
+   */
+  private final ConcurrentHashMap<Integer, Object> specLocks = new ConcurrentHashMap<>();
+
+  /** canonical cron -> group job 의 lock */
+  private final ConcurrentHashMap<String, Object> groupLocks = new ConcurrentHashMap<>();
+
   
   public JobRegistration( 
     DataManager          dataMgr, 
     CoordinatorRegistryCenter elasticJobRegCenter, 
-    SlackService slackBot
+    SlackService slackBot,
+    ShardResultMerger resultMerger,
+    JobExecutionConfig executionConfig,
+    ExecutorService groupJobWorkerPool,
+    JobMetrics jobMetrics,
+    JobRegistryMirror jobRegistryMirror
    ){
       this.dataManager         = dataMgr;
       this.elasticJobRegCenter = elasticJobRegCenter;
       this.slackBot        = slackBot;
+      this.resultMerger        = resultMerger;
+      this.executionConfig     = executionConfig;
+      this.groupWorkerPool     = groupJobWorkerPool;
+      this.jobMetrics          = jobMetrics;
+      this.jobRegistryMirror   = jobRegistryMirror;
       this.jobOperateAPI       = new JobOperateAPIImpl( elasticJobRegCenter );
+      this.jobConfigurationAPI = new JobConfigurationAPIImpl( elasticJobRegCenter );
   }
 
   /**
@@ -79,39 +158,269 @@ public class JobRegistration {
 
     log.info("--------------------- spec count: {}", allSpecList.size());
 
-    for( JobSpec spec : allSpecList ){
-      if ( spec.isExecuteFlag()) {
-        registJob(spec);
+    registJobs( allSpecList );
+  }
+
+  /**
+   * 여러 작업을 병렬로 등록합니다. ( startup, 대량 등록 ) <p>
+   * job 하나를 등록할 때마다 ScheduleJobBootstrap 이 zk 에 여러 번 동기 write 를 하므로, 여러 thread 에서 동시에 등록해서
+   * 하나의 zk 연결 위로 요청들이 이어서 나가도록 한다. 등록에 실패한 spec 은 log 만 남기고 나머지를 계속 등록한다.
+   *
+   * @return 등록한 작업 수
+   */
+  public int registJobs( Collection<? extends JobSpec> specs ) {
+    long startNanos = System.nanoTime();
+    AtomicInteger registered = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+
+    int parallelism = Math.max( 1, executionConfig.getRegistrationParallelism() );
+    ExecutorService registrationPool = Executors.newFixedThreadPool(
+        parallelism, threadFactory( "job-registration", false ) );
+    try {
+      List<Future<?>> futures = new ArrayList<>( specs.size() );
+      for ( JobSpec spec : specs ) {
+        if ( !spec.isExecuteFlag() ) {
+          continue;
+        }
+        futures.add( registrationPool.submit( () -> {
+          try {
+            registJob( spec );
+            registered.incrementAndGet();
+          } catch ( RuntimeException e ) {
+            failed.incrementAndGet();
+            log.error( "fail to regist job. spec id: {}", spec.getId(), e );
+          }
+        }));
+      }
+
+      for ( Future<?> future : futures ) {
+        future.get();
       }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    } catch ( ExecutionException e ) {
+      log.error( "job registration task failed", e.getCause() );
+    } finally {
+      registrationPool.shutdownNow();
     }
+
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long elapsedMillis = Math.max( 1L, TimeUnit.NANOSECONDS.toMillis( elapsedNanos ) );
+    log.info( "{} jobs registered in {} ms ( {} jobs/sec ), failed: {}, parallelism: {}",
+        registered.get(), elapsedMillis, registered.get() * 1000L / elapsedMillis, failed.get(), parallelism );
+    jobMetrics.recordRegistration( registered.get(), elapsedNanos );
+
+    return registered.get();
   }
 
   /**
    * 새로운 작업을 등록합니다.
-   * 스레드 안전성을 보장하기 위해 동기화됩니다.
+   * 같은 spec 에 대한 등록 / 해제와는 동기화되고, 다른 spec 의 등록과는 동시에 진행될 수 있습니다.
    * 
    * @param spec 등록할 작업 스펙
    */
-  public synchronized void registJob( JobSpec spec ) {
+  public void registJob( JobSpec spec ) {
     if (spec.isExecuteFlag()) {
       if ( spec instanceof ImplSpec ) {
-        setupJobs( elasticJobRegCenter, (ImplSpec) spec );
+        synchronized ( specLock( spec.getId() ) ) {
+          if ( executionConfig.isGroupByCron() ) {
+            joinCronGroup( (ImplSpec) spec );
+          } else {
+            setupJobs( elasticJobRegCenter, (ImplSpec) spec );
+          }
+        }
       }
     }
   }
 
   /**
-   * registJob 과 마찬가지로 함수 level synchronized
+   * registJob 과 마찬가지로 spec 단위로 동기화된다.
    * @throws NullPointerException
    *          zk 에서 job 을 찾지 못할 때 발생할 수 있다.
    */
-  public synchronized void dereigstJob( JobSpec spec ) {
-    int valueId = spec.getId();
-    String jobName = toJobName( valueId );
+  public void dereigstJob( JobSpec spec ) {
+    dereigstJob( spec.getId() );
+  }
+
+  /**
+   * 모아진 spec 변경분을 적용한다. {@link com.devtaco.distribute.service.SpecUpdateListener} 에서 사용한다. <p>
+   * UPDATE 된 spec 은 가능하면 실행 중인 job 의 설정만 바꾸고 ( {@link #reconfigureJob(ImplSpec)} ),
+   * 그럴 수 없으면 내리고 다시 올린다. 그 동안 spec 의 lock 을 계속 잡고 있는다.
+   * 
+   * @param registSpecs         새로 등록할 spec
+   * @param reregistSpecs       내렸다가 다시 올릴 spec
+   * @param deregistIds         내릴 spec 의 id
+   * @param previousValueNames  spec cache 를 갱신하기 전의 id -> valueName. 이름이 바뀐 spec 의 이전 job 을 내릴 때 쓴다.
+   */
+  public void applySpecChanges( Collection<? extends JobSpec> registSpecs,
+      Collection<? extends JobSpec> reregistSpecs, Collection<Integer> deregistIds,
+      Map<Integer, String> previousValueNames ) {
+
+    for ( int id : deregistIds ) {
+      dereigstJob( id, previousValueNames.get( id ) );
+    }
+
+    for ( JobSpec spec : reregistSpecs ) {
+      synchronized ( specLock( spec.getId() ) ) {
+        if ( spec instanceof ImplSpec && reconfigureJob( (ImplSpec) spec ) ) {
+          continue;
+        }
+        dereigstJob( spec.getId(), previousValueNames.get( spec.getId() ) );
+        registJob( spec );
+      }
+    }
+
+    for ( JobSpec spec : registSpecs ) {
+      registJob( spec );
+    }
+  }
+
+  private void dereigstJob( int valueId ) {
+    dereigstJob( valueId, null );
+  }
+
+  /**
+   * @param previousValueName spec cache 가 새 spec 으로 바뀌기 전의 valueName. 모르면 null
+   */
+  private void dereigstJob( int valueId, String previousValueName ) {
+    synchronized ( specLock( valueId ) ) {
+      // 다시 올라올 때까지 다른 node 가 저장할 수 있으므로, 이 node 가 알던 마지막 값은 버린다.
+      dataManager.forgetLastValue( valueId );
+
+      if ( executionConfig.isGroupByCron() ) {
+        leaveCronGroup( valueId );
+        return;
+      }
+
+      // 등록할 때의 job 이름으로 내린다. ( spec cache 는 이미 새 spec 으로 바뀌었을 수 있다 )
+      ImplTask task = registeredTasks.remove( valueId );
+      if ( null != task ) {
+        shutdownJob( toJobName( task.getSpec().getJobName() ) );
+      } else if ( null != previousValueName ) {
+        shutdownJob( toJobName( previousValueName ) );
+      } else {
+        shutdownJob( toJobName( valueId ) );
+      }
+    }
+  }
+
+  /**
+   * UPDATE 된 spec 을 scheduler 를 내리지 않고 반영한다. spec 의 lock 을 잡은 상태에서 호출한다. <p>
+   * - cron / shard 개수가 바뀌었으면 zk 의 job 설정만 바꾼다. elastic job 이 보고 다시 schedule 한다. <p>
+   * - 나머지 ( genFlag, 계산 parameter 등 ) 는 task 의 spec 만 바꿔 끼운다. 다음 실행부터 적용된다. <p>
+   * job 이름이 바뀌었거나 실행을 멈춘 경우 등은 제자리에서 바꿀 수 없다.
+   *
+   * @return 제자리에서 반영했으면 true. 내리고 다시 올려야 하면 false
+   */
+  private boolean reconfigureJob( ImplSpec newSpec ) {
+    if ( !newSpec.isExecuteFlag() ) {
+      return false;
+    }
+
+    if ( executionConfig.isGroupByCron() ) {
+      return reconfigureGroupMember( newSpec );
+    }
+
+    ImplTask task = registeredTasks.get( newSpec.getId() );
+    if ( null == task ) {
+      return false;
+    }
+
+    ImplSpec oldSpec = task.getSpec();
+    if ( !Objects.equals( oldSpec.getJobName(), newSpec.getJobName() ) ) {
+      return false;
+    }
+
+    String jobName = toJobName( oldSpec.getJobName() );
+    boolean cronChanged = !Objects.equals( oldSpec.getCronExpression(), newSpec.getCronExpression() );
+    boolean shardingChanged = oldSpec.getShardingTotalCount() != newSpec.getShardingTotalCount();
+
+    if ( cronChanged || shardingChanged ) {
+      JobConfigurationPOJO jobConfig = loadJobConfiguration( jobName );
+      if ( null == jobConfig ) {
+        return false;
+      }
+      jobConfig.setCron( newSpec.getCronExpression() );
+      jobConfig.setShardingTotalCount( newSpec.getShardingTotalCount() );
+      jobConfigurationAPI.updateJobConfiguration( jobConfig );
+    }
+
+    task.updateSpec( newSpec );
+    log.info( "job reconfigured in place. job: [{}], cron changed: {}, sharding changed: {}",
+        jobName, cronChanged, shardingChanged );
+    return true;
+  }
+
+  /**
+   * group 모드에서는 cron 이 같으면 member 의 spec 만 바꿔 끼운다. cron 이 바뀌면 group 을 옮겨야 하므로 false
+   */
+  private boolean reconfigureGroupMember( ImplSpec newSpec ) {
+    String cron = CronUtils.toCanonicalExpression( newSpec.getCronExpression() );
+    if ( null == cron || !cron.equals( specGroupCron.get( newSpec.getId() ) ) ) {
+      return false;
+    }
+
+    synchronized ( groupLock( cron ) ) {
+      CronGroupTask group = cronGroups.get( cron );
+      ImplTask member = null == group ? null : group.getMember( newSpec.getId() );
+      if ( null == member ) {
+        return false;
+      }
+      member.updateSpec( newSpec );
+    }
+    return true;
+  }
+
+  /**
+   * mirror 에 있으면 zk 에 묻지 않는다. mirror 가 아직 준비되지 않았거나 mirror 에 없으면 zk 에서 읽는다.
+   */
+  private JobConfigurationPOJO loadJobConfiguration( String jobName ) {
+    if ( jobRegistryMirror.isInitialized() ) {
+      JobConfigurationPOJO jobConfig = jobRegistryMirror.getJobConfiguration( jobName ).orElse( null );
+      if ( null != jobConfig ) {
+        return jobConfig;
+      }
+    }
+    return jobConfigurationAPI.getJobConfiguration( jobName );
+  }
+
+  /**
+   * zk 에 이미 같은 설정으로 등록된 job 이면 설정을 다시 쓰지 않는다. ( overwrite false ) <p>
+   * 재시작하거나 다른 node 가 먼저 등록한 job 을 다시 등록할 때 zk write 가 줄어든다. 
+   * overwrite 가 false 면 elastic job 은 zk 에 있는 설정을 읽어서 쓴다. <p>
+   * mirror 가 아직 준비되지 않았으면 항상 쓴다.
+   *
+   * @return zk 의 job 설정을 덮어써야 하면 true
+   */
+  private boolean isJobConfigurationChanged( String jobName, String cron, int shardingTotalCount ) {
+    if ( !jobRegistryMirror.isInitialized() ) {
+      return true;
+    }
+    return jobRegistryMirror.getJobConfiguration( jobName )
+        .map( jobConfig -> !( Objects.equals( cron, jobConfig.getCron() )
+            && shardingTotalCount == jobConfig.getShardingTotalCount()
+            && JOB_TIME_ZONE.equals( jobConfig.getTimeZone() )
+            && SHARDING_STRATEGY_TYPE.equals( jobConfig.getJobShardingStrategyType() )
+            && Objects.equals( executionConfig.getJobExecutorServiceHandlerType(), jobConfig.getJobExecutorServiceHandlerType() ) ) )
+        .orElse( true );
+  }
+
+  private Object specLock( int specId ) {
+    return specLocks.computeIfAbsent( specId, id -> new Object() );
+  }
+
+  private Object groupLock( String cron ) {
+    return groupLocks.computeIfAbsent( cron, key -> new Object() );
+  }
+
+  /**
+   * elastic job 을 shutdown 하고 job reg center 에서 지운다.
+   */
+  private void shutdownJob( String jobName ) {
     String pathKey = toJobPath( jobName );
 
     // 일단 해당 spec 의 job이 등록되어 있는지 확인
-    if ( elasticJobRegCenter.isExisted(pathKey)) {
+    if ( isJobRegistered( jobName, pathKey ) ) {
       // Disabling a job will cause other distributed jobs to trigger resharding.
       // disable 은 re-shard 하도록 한다. 즉, 여기서 원하는 동작이 아니다. 
       // jobOperateAPI.disable(jobName, null);
@@ -120,6 +429,17 @@ public class JobRegistration {
     }
   }
 
+  /**
+   * mirror 에 있으면 zk 에 묻지 않는다. <p>
+   * mirror 에 없다고 나오면, 방금 등록한 job 이 아직 mirror 에 반영되지 않았을 수 있으므로 zk 에 한 번 더 확인한다.
+   */
+  private boolean isJobRegistered( String jobName, String pathKey ) {
+    if ( jobRegistryMirror.isInitialized() && jobRegistryMirror.isJobRegistered( jobName ) ) {
+      return true;
+    }
+    return elasticJobRegCenter.isExisted( pathKey );
+  }
+
   /**
    * Job 을 elasticJob 에 등록하고, schedule 한다. <p/>
    * DB 에 등록된 spec 정보를 가져와서, ElasticJob 에 등록한뒤, spec 에 있는 cron expression 으로 schedule 한다.
@@ -134,18 +454,94 @@ public class JobRegistration {
     String jobName = toJobName( spec.getJobName() );
 
     
+    ImplTask task = new ImplTask(spec, dataManager, slackBot, resultMerger, jobMetrics );
+
     // RX 등록
     new ScheduleJobBootstrap(
             elasticJobRegCenter
-            , new ImpleTask(spec, dataManager, slackBot )
-            , JobConfiguration.newBuilder( jobName, 1 ) // shard 는 1개, 
+            , task
+            , JobConfiguration.newBuilder( jobName, spec.getShardingTotalCount() ) // shard 가 2개 이상이면 node 들이 나눠서 계산한다.
                               .cron( spec.getCronExpression() ) 
-                              .timeZone("GMT+0") // 위의 spec.getCronExpression() 으로 나오는 시간대는 UTC 를 기준으로 함.
-                                                // elasticJob 이 사용하는 scheduler 인 quartz 는 "GMT" 로 시작하는 timezone string 을 요구한다.
-                              .jobShardingStrategyType( "{SHARDING_STRATEGY}")
-                              .overwrite( true )
+                              .timeZone( JOB_TIME_ZONE ) // 위의 spec.getCronExpression() 으로 나오는 시간대는 UTC 를 기준으로 함.
+                              .jobShardingStrategyType( SHARDING_STRATEGY_TYPE )
+                              .jobExecutorServiceHandlerType( executionConfig.getJobExecutorServiceHandlerType() )
+                              .overwrite( isJobConfigurationChanged( jobName, spec.getCronExpression(), spec.getShardingTotalCount() ) )
                               .build()).schedule();
-   
+
+    registeredTasks.put( spec.getId(), task );
+  }
+
+  /**
+   * spec 을 같은 cron 의 group job 에 member 로 넣는다. group 이 없으면 group job 을 만들어 schedule 한다. <p>
+   * 이미 다른 group 에 있던 spec 이면 ( cron 이 바뀐 경우 ) 이전 group 에서 빼고 넣는다.
+   */
+  private void joinCronGroup( ImplSpec spec ) {
+    String cron = CronUtils.toCanonicalExpression( spec.getCronExpression() );
+
+    leaveCronGroup( spec.getId() );
+
+    synchronized ( groupLock( cron ) ) {
+      addGroupMember( spec, cron );
+    }
+  }
+
+  /**
+   * group 의 lock 을 잡은 상태에서 호출한다.
+   */
+  private void addGroupMember( ImplSpec spec, String cron ) {
+    CronGroupTask group = cronGroups.get( cron );
+    if ( null == group ) {
+      group = new CronGroupTask( cron, groupWorkerPool );
+      cronGroups.put( cron, group );
+
+      String groupJobName = toGroupJobName( cron );
+      int shardingTotalCount = executionConfig.getGroupShardingTotalCount();
+      new ScheduleJobBootstrap(
+              elasticJobRegCenter
+              , group
+              , JobConfiguration.newBuilder( groupJobName, shardingTotalCount )
+                                .cron( cron )
+                                .timeZone( JOB_TIME_ZONE )
+                                .jobShardingStrategyType( SHARDING_STRATEGY_TYPE )
+                                .jobExecutorServiceHandlerType( executionConfig.getJobExecutorServiceHandlerType() )
+                                .overwrite( isJobConfigurationChanged( groupJobName, cron, shardingTotalCount ) )
+                                .build()).schedule();
+      log.info("cron group job created. cron: [{}]", cron);
+    }
+
+    group.addMember( new ImplTask(spec, dataManager, slackBot, resultMerger, jobMetrics ) );
+    specGroupCron.put( spec.getId(), cron );
+  }
+
+  /**
+   * spec 을 group 에서 뺀다. member 가 하나도 남지 않으면 group job 도 내린다.
+   */
+  private void leaveCronGroup( int specId ) {
+    String cron = specGroupCron.remove( specId );
+    if ( null == cron ) {
+      return;
+    }
+
+    synchronized ( groupLock( cron ) ) {
+      CronGroupTask group = cronGroups.get( cron );
+      if ( null == group ) {
+        return;
+      }
+
+      group.removeMember( specId );
+      if ( group.isEmpty() ) {
+        cronGroups.remove( cron );
+        shutdownJob( toGroupJobName( cron ) );
+        log.info("cron group job removed. cron: [{}]", cron);
+      }
+    }
+  }
+
+  /**
+   * cron expression 에는 zk path 에 쓸 수 없는 "/" 등이 들어갈 수 있으므로 encode 해서 job 이름을 만든다.
+   */
+  private String toGroupJobName( String cron ) {
+    return toJobName( CRON_GROUP_PREFIX + URLEncoder.encode( cron, StandardCharsets.UTF_8 ) );
   }
 
   private String toJobName( String mnemonic ) {
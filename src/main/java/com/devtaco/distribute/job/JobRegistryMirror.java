@@ -0,0 +1,232 @@
+package com.devtaco.distribute.job;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheSelector;
+import org.apache.shardingsphere.elasticjob.infra.pojo.JobConfigurationPOJO;
+import org.apache.shardingsphere.elasticjob.infra.yaml.YamlEngine;
+import org.apache.shardingsphere.elasticjob.reg.base.CoordinatorRegistryCenter;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * registry center 의 job 설정 / instance / sharding node 만 memory 에 mirror 한다. <p>
+ * 어떤 job 이 등록되어 있는지, job 설정, 실행 중인 instance, shard 별 instance 를 zk 에 묻지 않고 바로 답한다. <p>
+ * zk watch event 로 갱신되므로 방금 zk 에 쓴 내용은 잠깐 늦게 보일 수 있다. <p>
+ * servers, leader, rate limit quota 등 나머지 node 는 읽지도 watch 하지도 않는다.
+ *
+ * zk 의 job node 구조 ( elastic job 정책 ) : <p>
+ * /{jobName}/config, /{jobName}/instances/{instanceId}, /{jobName}/sharding/{item}/instance
+ */
+@Slf4j
+@Component
+@SuppressWarnings("deprecation") // CuratorCache 는 읽을 node 를 고를 수 없어서, selector 가 있는 TreeCache 를 쓴다.
+public class JobRegistryMirror {
+
+  private static final String CONFIG_NODE = "config";
+  private static final String INSTANCES_NODE = "instances";
+  private static final String SHARDING_NODE = "sharding";
+  private static final String INSTANCE_NODE = "instance";
+
+  private final CuratorFramework client;
+
+  private TreeCache cache;
+
+  /** config node 가 있는 job 이름들. listener 가 갱신한다. */
+  private final Set<String> jobNames = ConcurrentHashMap.newKeySet();
+
+  /** 처음 전체를 읽어오면 열린다. */
+  private final CountDownLatch initialized = new CountDownLatch(1);
+
+  public JobRegistryMirror(CoordinatorRegistryCenter elasticJobRegCenter) {
+    this.client = (CuratorFramework) elasticJobRegCenter.getRawClient();
+  }
+
+  @PostConstruct
+  public void start() {
+    this.cache = TreeCache.newBuilder(client, "/")
+        .setSelector(new JobNodeSelector())
+        .build();
+    this.cache.getListenable().addListener((curator, event) -> onEvent(event));
+    try {
+      this.cache.start();
+    } catch (Exception e) {
+      // mirror 가 없으면 isInitialized() 가 false 이므로 zk 에 직접 묻는다.
+      log.error("fail to start job registry mirror", e);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (null != cache) {
+      cache.close();
+    }
+  }
+
+  /**
+   * @return 처음 전체를 읽어왔으면 true. 그 전에는 mirror 의 답을 믿으면 안된다.
+   */
+  public boolean isInitialized() {
+    return 0 == initialized.getCount();
+  }
+
+  /**
+   * @return job 의 config node 가 있으면 true
+   */
+  public boolean isJobRegistered(String jobName) {
+    return jobNames.contains(jobName);
+  }
+
+  public Set<String> getJobNames() {
+    return Collections.unmodifiableSet(jobNames);
+  }
+
+  /**
+   * @return zk 에 저장된 job 설정. 없거나 읽을 수 없으면 empty
+   */
+  public Optional<JobConfigurationPOJO> getJobConfiguration(String jobName) {
+    return Optional.ofNullable(cache.getCurrentData(toPath(jobName, CONFIG_NODE)))
+        .map(ChildData::getData)
+        .filter(data -> null != data && data.length > 0)
+        .map(data -> YamlEngine.unmarshal(new String(data, StandardCharsets.UTF_8), JobConfigurationPOJO.class));
+  }
+
+  /**
+   * @return job 을 실행하고 있는 instance id 들
+   */
+  public List<String> getInstances(String jobName) {
+    Map<String, ChildData> instances = cache.getCurrentChildren(toPath(jobName, INSTANCES_NODE));
+    if (null == instances) {
+      return Collections.emptyList();
+    }
+    return instances.keySet().stream().sorted().collect(Collectors.toList());
+  }
+
+  /**
+   * @return shard 번호 -> 그 shard 를 맡은 instance id
+   */
+  public Map<Integer, String> getShardingInstances(String jobName) {
+    String shardingPath = toPath(jobName, SHARDING_NODE);
+    Map<Integer, String> instanceByItem = new TreeMap<>();
+
+    Map<String, ChildData> items = cache.getCurrentChildren(shardingPath);
+    if (null == items) {
+      return instanceByItem;
+    }
+    for (String item : items.keySet()) {
+      ChildData node = cache.getCurrentData(shardingPath + "/" + item + "/" + INSTANCE_NODE);
+      if (null == node || null == node.getData()) {
+        continue;
+      }
+      try {
+        instanceByItem.put(Integer.parseInt(item), new String(node.getData(), StandardCharsets.UTF_8));
+      } catch (NumberFormatException e) {
+        // elastic job 이 쓰지 않는 node
+      }
+    }
+    return instanceByItem;
+  }
+
+  private void onEvent(TreeCacheEvent event) {
+    switch (event.getType()) {
+      case NODE_ADDED:
+      case NODE_UPDATED:
+        onJobConfig(event.getData(), true);
+        break;
+      case NODE_REMOVED:
+        onJobConfig(event.getData(), false);
+        break;
+      case INITIALIZED:
+        initialized.countDown();
+        log.info("job registry mirror initialized. jobs: {}", jobNames.size());
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * "/{jobName}/config" 의 생성 / 삭제로 job 목록을 갱신한다.
+   */
+  private void onJobConfig(ChildData node, boolean exists) {
+    String[] names = splitPath(node.getPath());
+    if (2 != names.length || !CONFIG_NODE.equals(names[1])) {
+      return; // job 바로 밑의 config 가 아님
+    }
+
+    if (exists) {
+      jobNames.add(names[0]);
+    } else {
+      jobNames.remove(names[0]);
+    }
+  }
+
+  /**
+   * mirror 할 node 만 고른다. <p>
+   * /{jobName}, /{jobName}/config, /{jobName}/instances/*, /{jobName}/sharding/{item}/instance
+   */
+  private static class JobNodeSelector implements TreeCacheSelector {
+
+    @Override
+    public boolean traverseChildren(String fullPath) {
+      String[] names = splitPath(fullPath);
+      switch (names.length) {
+        case 0:
+        case 1:
+          return true;
+        case 2:
+          return INSTANCES_NODE.equals(names[1]) || SHARDING_NODE.equals(names[1]);
+        case 3:
+          return SHARDING_NODE.equals(names[1]);
+        default:
+          return false;
+      }
+    }
+
+    @Override
+    public boolean acceptChild(String fullPath) {
+      String[] names = splitPath(fullPath);
+      switch (names.length) {
+        case 1:
+          return true;
+        case 2:
+          return CONFIG_NODE.equals(names[1]) || INSTANCES_NODE.equals(names[1]) || SHARDING_NODE.equals(names[1]);
+        case 3:
+          return INSTANCES_NODE.equals(names[1]) || SHARDING_NODE.equals(names[1]);
+        case 4:
+          return SHARDING_NODE.equals(names[1]) && INSTANCE_NODE.equals(names[3]);
+        default:
+          return false;
+      }
+    }
+  }
+
+  /**
+   * "/a/b" -> [a, b], "/" -> []
+   */
+  private static String[] splitPath(String path) {
+    String trimmed = path.startsWith("/") ? path.substring(1) : path;
+    return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+  }
+
+  private static String toPath(String jobName, String node) {
+    return "/" + jobName + "/" + node;
+  }
+}
@@ -0,0 +1,112 @@
+package com.devtaco.distribute.job;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.shardingsphere.elasticjob.reg.base.CoordinatorRegistryCenter;
+import org.apache.zookeeper.KeeperException;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * sharding 된 job 의 부분 결과를 ZooKeeper 에 모아서, 마지막으로 도착한 shard 가 merge 하도록 한다.
+ * <p>
+ * 부분 결과는 "/jobName/partials/{회차 timestamp}/{shard 번호}" 에 저장된다. <p>
+ * shard 들이 서로 다른 node 에서 돌기 때문에, 회차는 cron 의 실행 시점으로 식별한다. <p>
+ * 모든 shard 가 도착하면 "merged" node 를 먼저 만든 한 shard 만 merge 권한을 얻는다.
+ */
+@Slf4j
+@Component
+public class ShardResultMerger {
+
+  private static final String PARTIALS_NODE = "partials";
+  private static final String MERGED_NODE = "merged";
+
+  /** 끝내 모든 shard 가 모이지 않은 회차를 지우는 기준 시간 */
+  private static final long STALE_PARTIAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private final CoordinatorRegistryCenter elasticJobRegCenter;
+
+  public ShardResultMerger(CoordinatorRegistryCenter elasticJobRegCenter) {
+    this.elasticJobRegCenter = elasticJobRegCenter;
+  }
+
+  /**
+   * shard 의 부분 결과를 등록한다.
+   *
+   * @param jobName             elastic job 이름
+   * @param tickMillis          회차( cron 실행 시점 ) timestamp
+   * @param shardingItem        shard 번호
+   * @param shardingTotalCount  전체 shard 개수
+   * @param partialValue        부분 결과
+   * @return 이 shard 가 merge 를 맡게 되면 전체 부분 결과 목록, 아니면 empty
+   */
+  public Optional<List<BigDecimal>> submit(String jobName, long tickMillis, int shardingItem,
+      int shardingTotalCount, BigDecimal partialValue) {
+
+    String tickPath = toTickPath(jobName, tickMillis);
+    elasticJobRegCenter.persist(tickPath + "/" + shardingItem, partialValue.toPlainString());
+
+    List<String> items = new ArrayList<>(elasticJobRegCenter.getChildrenKeys(tickPath));
+    items.remove(MERGED_NODE);
+    if (items.size() < shardingTotalCount || !claimMerge(tickPath)) {
+      return Optional.empty();
+    }
+
+    List<BigDecimal> partialValues = new ArrayList<>(items.size());
+    for (String item : items) {
+      partialValues.add(new BigDecimal(elasticJobRegCenter.getDirectly(tickPath + "/" + item)));
+    }
+
+    elasticJobRegCenter.remove(tickPath);
+    removeStaleTicks(jobName, tickMillis);
+
+    return Optional.of(partialValues);
+  }
+
+  /**
+   * merged node 생성에 성공한 shard 만 true. 이미 있으면 다른 shard 가 merge 중이다.
+   */
+  private boolean claimMerge(String tickPath) {
+    CuratorFramework client = (CuratorFramework) elasticJobRegCenter.getRawClient();
+    try {
+      client.create().forPath(tickPath + "/" + MERGED_NODE);
+      return true;
+    } catch (KeeperException.NodeExistsException e) {
+      return false;
+    } catch (Exception e) {
+      log.error("fail to claim shard merge of {}", tickPath, e);
+      return false;
+    }
+  }
+
+  /**
+   * 어떤 shard 가 실패해서 merge 되지 못한 회차는 남아있게 되므로, 오래된 것들은 지운다.
+   */
+  private void removeStaleTicks(String jobName, long tickMillis) {
+    String partialsPath = toPartialsPath(jobName);
+    for (String tick : elasticJobRegCenter.getChildrenKeys(partialsPath)) {
+      try {
+        if (Long.parseLong(tick) < tickMillis - STALE_PARTIAL_MILLIS) {
+          log.warn("remove stale partial results. job: {}, tick: {}", jobName, tick);
+          elasticJobRegCenter.remove(partialsPath + "/" + tick);
+        }
+      } catch (NumberFormatException e) {
+        log.warn("unknown node under {} : {}", partialsPath, tick);
+      }
+    }
+  }
+
+  private String toPartialsPath(String jobName) {
+    return "/" + jobName + "/" + PARTIALS_NODE;
+  }
+
+  private String toTickPath(String jobName, long tickMillis) {
+    return toPartialsPath(jobName) + "/" + tickMillis;
+  }
+}
@@ -0,0 +1,54 @@
+package com.devtaco.distribute.job;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.devtaco.distribute.util.CronUtils;
+
+/**
+ * shard 실행이 {@link ShardResultMerger} 의 어느 회차에 들어가도 되는지 판단한다. <p>
+ * 회차는 실행을 시작한 시각 이전의 마지막 cron 시각으로 정한다. elastic job 은 예정 시각을 알려주지 않으므로,
+ * 시작이 한 주기 넘게 늦어지면 다음 회차로 잡혀서 다음 회차의 부분 결과와 섞인다. <p>
+ * 그래서 이 node 가 shard 별로 마지막으로 맡은 회차를 기억해두고, 바로 다음 회차를 건너뛰고 그 다음 회차로 잡힌 실행은
+ * 한 주기 넘게 늦은 실행으로 보고 받지 않는다. <p>
+ * - 받지 않은 뒤 같은 회차로 다시 오는 실행 ( misfire 로 뒤따라 도는 제 시각의 실행 ) 은 받는다. <p>
+ * - 두 회차 이상 건너뛴 경우는 shard 가 다른 node 에 있다가 돌아온 것으로 보고 받는다. <p>
+ * 같은 shard 는 elastic job 이 한 번에 하나씩 돌리므로, shard 별로는 동시에 불리지 않는다.
+ */
+public class ShardTickTracker {
+
+  /** shard 번호 -> 이 node 에서 마지막으로 맡은 회차. 받지 않은 실행의 회차도 남긴다. */
+  private final ConcurrentHashMap<Integer, Long> lastTickByItem = new ConcurrentHashMap<>();
+
+  /**
+   * @param cronExpression  spec 의 cron expression
+   * @param shardingItem    shard 번호
+   * @param tickMillis      실행을 시작한 시각으로 정한 회차
+   * @return 부분 결과를 이 회차에 넣어도 되면 true. 한 주기 넘게 늦은 실행으로 보이면 false
+   */
+  public boolean accept(String cronExpression, int shardingItem, long tickMillis) {
+    Long lastTickMillis = lastTickByItem.put(shardingItem, tickMillis);
+    if (null == lastTickMillis || tickMillis <= lastTickMillis) {
+      return true;
+    }
+
+    Long expected = nextTick(cronExpression, lastTickMillis);
+    Long afterExpected = null == expected ? null : nextTick(cronExpression, expected);
+    return null == afterExpected || tickMillis != afterExpected;
+  }
+
+  /**
+   * @return tickMillis 다음 회차. 없거나 expression 이 틀리면 null
+   */
+  private static Long nextTick(String cronExpression, long tickMillis) {
+    try {
+      ZonedDateTime next = CronUtils.nextExecutionDate(cronExpression,
+          ZonedDateTime.ofInstant(Instant.ofEpochMilli(tickMillis), ZoneOffset.UTC));
+      return null == next ? null : next.toInstant().toEpochMilli();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
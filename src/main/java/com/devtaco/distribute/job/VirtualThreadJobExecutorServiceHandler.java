@@ -0,0 +1,39 @@
+package com.devtaco.distribute.job;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.shardingsphere.elasticjob.infra.handler.threadpool.JobExecutorServiceHandler;
+
+import com.devtaco.distribute.util.ExecutionThreads;
+
+/**
+ * elastic job 이 sharding item 별로 {@link DistributeTask#execute} 를 돌리는 executor 를 virtual thread 로 만든다. <p>
+ * JobConfiguration 의 jobExecutorServiceHandlerType 에 {@link #TYPE} 을 주면 사용된다. ( META-INF/services 로 등록 ) <p>
+ * 실행 JVM 이 virtual thread 를 지원하지 않으면, elastic job 의 기본값( CPU ) 과 같은 크기의 platform thread pool 을 쓴다.
+ */
+public class VirtualThreadJobExecutorServiceHandler implements JobExecutorServiceHandler {
+
+  public static final String TYPE = "VIRTUAL_THREAD";
+
+  @Override
+  public ExecutorService createExecutorService(String jobName) {
+    ExecutorService executor = ExecutionThreads.newVirtualThreadPerTaskExecutor(jobName + "-");
+    if (null != executor) {
+      return executor;
+    }
+
+    int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+    return new ThreadPoolExecutor(poolSize, poolSize, 5, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+        threadFactory(jobName, false));
+  }
+
+  @Override
+  public String getType() {
+    return TYPE;
+  }
+}
@@ -1,31 +1,53 @@
 package com.devtaco.distribute.job.jobImpl;
 
 import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
 
 import org.apache.shardingsphere.elasticjob.api.ShardingContext;
 
 import com.devtaco.distribute.job.DistributeTask;
+import com.devtaco.distribute.job.JobMetrics;
+import com.devtaco.distribute.job.ShardResultMerger;
+import com.devtaco.distribute.job.ShardTickTracker;
+import com.devtaco.distribute.model.FixedPoint;
 import com.devtaco.distribute.model.ImplSpec;
 import com.devtaco.distribute.model.ImplValue;
 import com.devtaco.distribute.repository.DataManager;
+import com.devtaco.distribute.repository.ValueWriteResult;
 import com.devtaco.distribute.service.SlackService;
+import com.devtaco.distribute.util.CronUtils;
 
 public class ImplTask implements DistributeTask {
 
   private static final int CALCULATION_MAX_RETRY = 3; // 값 계산 -> 검증후 fail 인 경우, 몇 번까지 retry 할 건지..
 
-  private final ImplSpec spec;
+  /** spec 이 UPDATE 되면 job 을 내리지 않고 바꿔 끼운다. ( {@link #updateSpec(ImplSpec)} ) */
+  private volatile ImplSpec spec;
 
   private final DataManager dataManager;
 
   private SlackService slackBot;
 
+  /** shard 가 여러개인 경우 부분 결과를 모으는 객체 */
+  private final ShardResultMerger resultMerger;
+
+  /** 단계별 수행 시간, retry, schedule lag 기록 */
+  private final JobMetrics metrics;
+
+  /** shard 실행이 한 주기 넘게 늦어서 다음 회차로 잘못 잡히는 것을 막는다. */
+  private final ShardTickTracker shardTicks = new ShardTickTracker();
+
   private ImplValue value;
 
-  public ImplTask(ImplSpec spec, DataManager dataManager, SlackService slackBot) {
+  public ImplTask(ImplSpec spec, DataManager dataManager, SlackService slackBot, ShardResultMerger resultMerger,
+      JobMetrics metrics) {
     this.spec = spec;
     this.dataManager = dataManager;
     this.slackBot = slackBot;
+    this.resultMerger = resultMerger;
+    this.metrics = metrics;
 
     initialize();
   }
@@ -40,14 +62,43 @@ public class ImplTask implements DistributeTask {
 
   @Override
   public void calculate() {
+    calculate(this.spec);
+  }
+
+  /**
+   * 계산만 한다. 저장은 검증을 통과한 뒤에 {@link #saveValue(ImplSpec, ImplValue)} 로 한다.
+   *
+   * @param spec 이번 회차의 spec. 계산 중에 spec 이 바뀌어도 이 spec 으로 끝까지 돈다.
+   */
+  private void calculate(ImplSpec spec) {
 
     BigDecimal calculatedValue = new BigDecimal("1000");
 
-    this.value.setValue(calculatedValue);
+    ImplValue calculated = this.value;
+    if (spec.isFixedPoint()) {
+      calculated.setScaledValue(FixedPoint.toScaled(calculatedValue, spec.getValueScale()), spec.getValueScale());
+    } else {
+      calculated.setValue(calculatedValue);
+    }
 
-    dataManager.saveValue(this.value);
+    long now = System.currentTimeMillis();
+    ZonedDateTime tick = CronUtils.previousExecutionDate(spec.getCronExpression(), ZonedDateTime.now(ZoneOffset.UTC));
+    calculated.setValueTsMillis(null == tick ? now : tick.toInstant().toEpochMilli());
+    calculated.setCalculateTsMillis(now);
+  }
 
-    slackBot.sendAlert("value Calculated! " + value.getId() + ":" + value.getValue());
+  /**
+   * 검증을 통과한 값을 저장한다. 저장은 batch 로 이루어지므로 기다리지 않는다. 저장이 확인되면 알린다. <p>
+   * 값이 바뀌지 않았으면 저장도 알림도 하지 않는다.
+   */
+  private void saveValue(ImplSpec spec, ImplValue accepted) {
+    dataManager.saveValueIfChanged(spec, accepted).thenAccept(result -> {
+      if (ValueWriteResult.WRITTEN == result) {
+        slackBot.enqueueAlert("value Calculated! " + accepted.getId() + ":" + accepted.getValue());
+      } else if (ValueWriteResult.FAILED == result) {
+        slackBot.enqueueAlert("value save failed! " + accepted.getId() + ":" + accepted.getValue());
+      }
+    });
   }
 
   // ====================================== 실제 Job 이 돌아가는 부분 End ==============================
@@ -56,8 +107,18 @@ public class ImplTask implements DistributeTask {
    * @return 검증이 OK 이면( 재계산이 필요 없으면 ) true. FAIL 이면, false 를 리턴한다.
    */
   public boolean validateCalculation() {
+    return validateCalculation(this.spec);
+  }
+
+  private boolean validateCalculation(ImplSpec spec) {
     // ==> 어느 정도까지를 오차 인정할건지(tolerance 개념) 정의해야함.
-    return true;
+    if (spec.getMaxChangeRatio() <= 0) {
+      return true;
+    }
+
+    // 최근 값들은 memory 에 있으므로 DB 를 보지 않는다.
+    return dataManager.getRecentValueStore().isWithinChange(spec.getId(), value.getValueTsMillis(), value.getValue(),
+        spec.getMaxChangeRatio());
   }
 
   @Override
@@ -68,20 +129,142 @@ public class ImplTask implements DistributeTask {
       return;
     }
 
+    // shard 가 여러개면 자신의 몫만 계산한다.
+    if (shardingContext.getShardingTotalCount() > 1) {
+      executeShard(shardingContext);
+      return;
+    }
+
+    runCalculation();
+  }
+
+  /**
+   * 계산 -> 검증을 검증이 통과할 때까지 ( 최대 CALCULATION_MAX_RETRY 번 ) 반복한다. <p>
+   * 검증을 통과한 값만 저장한다. 끝까지 통과하지 못하면 저장하지 않고 알린다. <p>
+   * {@link com.devtaco.distribute.job.CronGroupTask} 에 묶인 경우, group job 이 이 method 를 직접 호출한다.
+   */
+  public void runCalculation() {
+
+    // 실행 도중에 spec 이 바뀌어도 이번 회차는 시작할 때의 spec 으로 돈다.
+    ImplSpec spec = this.spec;
+
+    // generate State 가 false 면 산출 X
+    if (false == spec.getGenFlag()) {
+      return;
+    }
+
+    String jobName = spec.getJobName();
+    metrics.recordScheduleLag(jobName, spec.getCronExpression(), ZonedDateTime.now(ZoneOffset.UTC));
+
     int tryCount = 0;
 
     do {
-      calculate();
+      // 저장 buffer 에 넘긴 값이 바뀌지 않도록, 매 계산마다 새 객체로 시작한다.
+      metrics.recordPhase(jobName, JobMetrics.PHASE_INITIALIZE, this::initialize);
 
-      if (validateCalculation()) {
-        break;
+      // 계산과 검증 모두 시작할 때 읽은 spec 을 쓴다.
+      metrics.recordPhase(jobName, JobMetrics.PHASE_CALCULATE, () -> calculate(spec));
+
+      if (metrics.recordPhase(jobName, JobMetrics.PHASE_VALIDATE, () -> validateCalculation(spec))) {
+        saveValue(spec, this.value);
+        return;
       }
 
       tryCount++;
+      metrics.incrementRetry(jobName);
     }
 
     while (tryCount < CALCULATION_MAX_RETRY);
 
+    slackBot.enqueueAlert("value validation failed! " + spec.getId() + ":" + this.value.getValue()
+        + " (tried " + tryCount + " times)");
+  }
+
+  public ImplSpec getSpec() {
+    return this.spec;
+  }
+
+  /**
+   * 다음 실행부터 새 spec 을 사용한다. id 가 같은 spec 이어야 한다.
+   */
+  public void updateSpec(ImplSpec newSpec) {
+    if (newSpec.getId() != this.spec.getId()) {
+      throw new IllegalArgumentException("spec id mismatch. " + this.spec.getId() + " != " + newSpec.getId());
+    }
+    this.spec = newSpec;
+  }
+
+  /**
+   * 할당된 shard 의 부분 값만 계산해서 merger 에 넘긴다. <p>
+   * 같은 node 에 shard 가 여러개 할당되면 elastic job 이 동시에 호출하므로, 여기서는 객체의 상태를 바꾸지 않는다. <p>
+   * 모든 shard 의 부분 값이 모이면, 마지막 shard 가 합쳐서 저장한다. <p>
+   * 한 주기 넘게 늦게 시작해서 다음 회차로 잡힌 실행은 그 회차에 섞지 않고 버린다. ( {@link ShardTickTracker} )
+   */
+  private void executeShard(ShardingContext shardingContext) {
+    ImplSpec spec = this.spec;
+    ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+    ZonedDateTime tick = CronUtils.previousExecutionDate(spec.getCronExpression(), now);
+    if (null == tick) {
+      return;
+    }
+    long tickMillis = tick.toInstant().toEpochMilli();
+    metrics.recordScheduleLag(spec.getJobName(), spec.getCronExpression(), now);
+
+    if (!shardTicks.accept(spec.getCronExpression(), shardingContext.getShardingItem(), tickMillis)) {
+      metrics.incrementLaggingShard(spec.getJobName());
+      slackBot.enqueueAlert("shard started more than one cron period late, partial dropped! " + spec.getId()
+          + " shard: " + shardingContext.getShardingItem() + " tick: " + tickMillis);
+      return;
+    }
+
+    BigDecimal partialValue = metrics.recordPhase(spec.getJobName(), JobMetrics.PHASE_CALCULATE,
+        () -> calculatePartialValue(spec, shardingContext));
+
+    resultMerger.submit(shardingContext.getJobName(), tickMillis, shardingContext.getShardingItem(),
+        shardingContext.getShardingTotalCount(), partialValue)
+        .ifPresent(partialValues -> saveMergedValue(spec, tickMillis, partialValues));
+  }
+
+  private BigDecimal calculatePartialValue(ImplSpec spec, ShardingContext shardingContext) {
+    if (spec.isFixedPoint()) {
+      long scaledPartialValue = this.value.calculateScaledPartialValue(
+          shardingContext.getShardingItem(), shardingContext.getShardingTotalCount(), spec.getValueScale());
+      return FixedPoint.toDecimal(scaledPartialValue, spec.getValueScale());
+    }
+    return this.value.calculatePartialValue(
+        shardingContext.getShardingItem(), shardingContext.getShardingTotalCount());
+  }
+
+  private void saveMergedValue(ImplSpec spec, long tickMillis, List<BigDecimal> partialValues) {
+    ImplValue mergedValue = new ImplValue(spec.getId());
+    mergedValue.setValueTsMillis(tickMillis);
+    mergedValue.setCalculateTsMillis(System.currentTimeMillis());
+    if (spec.isFixedPoint()) {
+      long scaledMergedValue = 0L;
+      for (BigDecimal partialValue : partialValues) {
+        scaledMergedValue = FixedPoint.add(scaledMergedValue, FixedPoint.toScaled(partialValue, spec.getValueScale()));
+      }
+      mergedValue.setScaledValue(scaledMergedValue, spec.getValueScale());
+    } else {
+      mergedValue.setValue(ImplValue.mergePartialValues(partialValues));
+    }
+
+    // shard 들은 이미 끝났으므로 다시 계산하지 않는다. 검증을 통과하지 못하면 저장하지 않고 알린다.
+    if (spec.getMaxChangeRatio() > 0 && !dataManager.getRecentValueStore().isWithinChange(spec.getId(), tickMillis,
+        mergedValue.getValue(), spec.getMaxChangeRatio())) {
+      slackBot.enqueueAlert("value validation failed! " + mergedValue.getId() + ":" + mergedValue.getValue()
+          + " (merged " + partialValues.size() + " shards)");
+      return;
+    }
+
+    dataManager.saveValueIfChanged(spec, mergedValue).thenAccept(result -> {
+      if (ValueWriteResult.WRITTEN == result) {
+        slackBot.enqueueAlert("value Calculated! " + mergedValue.getId() + ":" + mergedValue.getValue()
+            + " (merged " + partialValues.size() + " shards)");
+      } else if (ValueWriteResult.FAILED == result) {
+        slackBot.enqueueAlert("value save failed! " + mergedValue.getId() + ":" + mergedValue.getValue());
+      }
+    });
   }
 
 }
@@ -32,12 +32,44 @@ public class CalculateValueObj {
   private long calculateTsMillis;
 
   /** 계산된 값 */
-  @Setter
-  @Getter
   private BigDecimal value;
 
+  /** fixed point 모드로 계산된 값 ( value * 10^valueScale ). valueScale 이 -1 이면 사용하지 않는다. */
+  @Getter
+  private long scaledValue;
+
+  /** fixed point 모드의 scale. BigDecimal 모드이면 -1 */
+  @Getter
+  private int valueScale = -1;
+
   public CalculateValueObj(int id) {
     this.id = id;
   }
 
+  public CalculateValueObj setValue(BigDecimal value) {
+    this.value = value;
+    this.valueScale = -1;
+    return this;
+  }
+
+  /**
+   * fixed point 모드로 계산된 값을 넣는다. BigDecimal 은 {@link #getValue()} 를 부를 때 만든다.
+   */
+  public CalculateValueObj setScaledValue(long scaledValue, int valueScale) {
+    this.scaledValue = scaledValue;
+    this.valueScale = FixedPoint.checkScale(valueScale);
+    this.value = null;
+    return this;
+  }
+
+  /**
+   * 저장 등 외부로 나갈 때 사용한다. fixed point 모드의 값도 손실 없이 BigDecimal 로 바꿔준다.
+   */
+  public BigDecimal getValue() {
+    if (null == value && valueScale >= 0) {
+      return FixedPoint.toDecimal(scaledValue, valueScale);
+    }
+    return value;
+  }
+
 }
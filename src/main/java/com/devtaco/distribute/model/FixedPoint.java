@@ -0,0 +1,48 @@
+package com.devtaco.distribute.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * scaling 된 long 값( unscaled value ) 을 다루는 유틸리티입니다.
+ * 예) scale 4 에서 12.3456 -> 123456
+ * 
+ * BigDecimal 과의 변환은 손실이 없을 때만 허용하고, overflow 는 ArithmeticException 으로 알립니다.
+ */
+public final class FixedPoint {
+
+  /** 지원하는 최대 scale. long 범위( 약 9.2e18 ) 안에서 정수부를 충분히 남기기 위한 값 */
+  public static final int MAX_SCALE = 12;
+
+  private FixedPoint() {
+  }
+
+  /**
+   * BigDecimal 을 scale 에 맞춰 long 으로 바꾼다.
+   * @throws ArithmeticException scale 보다 소수점 자리가 많거나( 손실 발생 ) long 범위를 넘는 경우
+   */
+  public static long toScaled(BigDecimal value, int scale) {
+    return value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+  }
+
+  /**
+   * scaling 된 long 을 BigDecimal 로 바꾼다. 손실이 없다. ( 저장 등 외부로 나갈 때 사용 )
+   */
+  public static BigDecimal toDecimal(long scaledValue, int scale) {
+    return BigDecimal.valueOf(scaledValue, scale);
+  }
+
+  /**
+   * @throws ArithmeticException overflow 가 난 경우
+   */
+  public static long add(long scaledLeft, long scaledRight) {
+    return Math.addExact(scaledLeft, scaledRight);
+  }
+
+  public static int checkScale(int scale) {
+    if (scale < 0 || scale > MAX_SCALE) {
+      throw new IllegalArgumentException("fixed point scale must be 0.." + MAX_SCALE + " : " + scale);
+    }
+    return scale;
+  }
+}
@@ -1,5 +1,7 @@
 package com.devtaco.distribute.model;
 
+import java.math.BigDecimal;
+
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -22,6 +24,22 @@ public class ImplSpec extends JobSpec {
   /** 생성 플래그 */
   private boolean genFlag;
 
+  /** 값과 가중치를 계산할 숫자 형식 */
+  private NumericMode numericMode = NumericMode.DECIMAL;
+
+  /** {@link NumericMode#FIXED_POINT} 일 때 사용할 소수점 자리수 */
+  private int valueScale = 8;
+
+  /** 마지막 저장 값과의 차이가 이 값 이하면 바뀌지 않은 것으로 보고 저장하지 않는다. 0 이면 같은 값일 때만 */
+  private BigDecimal valueEpsilon = BigDecimal.ZERO;
+
+  /** 검증 시 바로 앞 값 대비 허용하는 변화율 ( 0.1 이면 10% ). 0 이면 검사하지 않는다. */
+  private double maxChangeRatio = 0;
+
+  public boolean isFixedPoint() {
+    return NumericMode.FIXED_POINT == numericMode;
+  }
+
   /**
    * 조건에 따라 생성 플래그를 설정합니다.
    * @return 현재 ImplSpec 인스턴스
@@ -1,6 +1,7 @@
 package com.devtaco.distribute.model;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Map;
 
 import lombok.Getter;
@@ -29,5 +30,71 @@ public class ImplValue extends CalculateValueObj {
   public BigDecimal calculateValue() {
     return BigDecimal.ONE;
   }
-  
+
+  /**
+   * sharding 된 job 에서, 자신의 shard 에 할당된 key 의 source 만으로 부분 값을 계산한다.
+   * @param shardingItem        이 node 가 맡은 shard 번호 ( 0 부터 )
+   * @param shardingTotalCount  전체 shard 개수
+   * @return 할당된 key 들의 weight 합. source 가 없으면 0
+   */
+  public BigDecimal calculatePartialValue(int shardingItem, int shardingTotalCount) {
+    BigDecimal partialValue = BigDecimal.ZERO;
+    if (null == sourceClassifyByKey) {
+      return partialValue;
+    }
+
+    for (Map.Entry<String, SourceData> entry : sourceClassifyByKey.entrySet()) {
+      if (isAssignedTo(entry.getKey(), shardingItem, shardingTotalCount)) {
+        partialValue = partialValue.add(entry.getValue().getWeight());
+      }
+    }
+    return partialValue;
+  }
+
+  /**
+   * {@link #calculatePartialValue(int, int)} 의 fixed point 버전. <p>
+   * scale 이 같은 fixed point source 는 객체를 만들지 않고 더한다. 그 외( BigDecimal 모드, 다른 scale ) 는 scale 에 맞춰 바꿔서 더한다.
+   * @param scale 결과의 scale ( spec 의 valueScale )
+   * @return 할당된 key 들의 scaling 된 weight 합
+   * @throws ArithmeticException overflow 가 나거나, scale 에 맞추면 손실이 생기는 source 가 있는 경우
+   */
+  public long calculateScaledPartialValue(int shardingItem, int shardingTotalCount, int scale) {
+    long partialValue = 0L;
+    if (null == sourceClassifyByKey) {
+      return partialValue;
+    }
+
+    for (Map.Entry<String, SourceData> entry : sourceClassifyByKey.entrySet()) {
+      if (isAssignedTo(entry.getKey(), shardingItem, shardingTotalCount)) {
+        partialValue = FixedPoint.add(partialValue, scaledWeightOf(entry.getValue(), scale));
+      }
+    }
+    return partialValue;
+  }
+
+  private static long scaledWeightOf(SourceData source, int scale) {
+    if (source.isFixedPoint() && source.getScale() == scale) {
+      return source.getScaledWeight();
+    }
+    return FixedPoint.toScaled(source.getWeight(), scale);
+  }
+
+  /**
+   * 각 shard 의 부분 값을 합쳐 최종 값을 만든다. 부분 값은 서로 겹치지 않는 key 의 합이므로 더하면 된다.
+   */
+  public static BigDecimal mergePartialValues(Collection<BigDecimal> partialValues) {
+    BigDecimal merged = BigDecimal.ZERO;
+    for (BigDecimal partialValue : partialValues) {
+      merged = merged.add(partialValue);
+    }
+    return merged;
+  }
+
+  /**
+   * key 가 어느 shard 에 속하는지 결정한다. 모든 node 에서 같은 결과가 나와야 하므로 String.hashCode 를 쓴다.
+   */
+  public static boolean isAssignedTo(String key, int shardingItem, int shardingTotalCount) {
+    return Math.floorMod(key.hashCode(), shardingTotalCount) == shardingItem;
+  }
+
 }
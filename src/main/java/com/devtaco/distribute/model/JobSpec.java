@@ -44,10 +44,23 @@ public abstract class JobSpec {
    */
   private boolean executeFlag;
 
+  /**
+   * job 을 몇 개의 shard 로 나누어 돌릴 것인가. 기본값 1 ( 한 node 에서 전부 계산 ) <p>
+   * 2 이상이면 각 node 는 자신에게 할당된 shard 의 몫만 계산하고, 부분 결과는 merge 된다.
+   */
+  @Setter(AccessLevel.NONE)
+  private int shardingTotalCount = 1;
+
   public int getId() {
     return id;
   }
 
+  public JobSpec setShardingTotalCount(int shardingTotalCount) {
+    // elastic job 은 1 보다 작은 shard 개수를 허용하지 않는다.
+    this.shardingTotalCount = Math.max(1, shardingTotalCount);
+    return this;
+  }
+
   public JobSpec setCronExpression(String cronExpression) {
     if (null == cronExpression || cronExpression.isEmpty()) {
       this.cronExpression = null;
@@ -0,0 +1,13 @@
+package com.devtaco.distribute.model;
+
+/**
+ * 값과 가중치를 어떤 숫자 형식으로 계산할지 정의합니다.
+ */
+public enum NumericMode {
+
+  /** BigDecimal 로 계산한다. ( 기본값 ) */
+  DECIMAL,
+
+  /** spec 에 설정된 scale 로 scaling 한 long 으로 계산한다. 더할 때 객체를 만들지 않는다. */
+  FIXED_POINT
+}
@@ -13,6 +13,9 @@ import lombok.ToString;
 /**
  * 소스 데이터와 그 가중치를 관리하는 클래스입니다.
  * 가중치 기반 정렬을 지원합니다.
+ * 
+ * scale 을 주고 생성하면 가중치를 scaling 된 long 으로 관리합니다. ( {@link NumericMode#FIXED_POINT} )
+ * 이 경우 가중치 합산과 정렬에서 객체를 만들지 않습니다.
  */
 @ToString
 @Getter
@@ -21,6 +24,14 @@ public class SourceData implements Comparable<SourceData> {
   /** 데이터의 가중치 */
   private BigDecimal weight;
 
+  /** fixed point 모드의 scale. BigDecimal 모드이면 -1 */
+  @JsonIgnore // 저장은 weight 로만 한다
+  private final int scale;
+
+  /** fixed point 모드의 가중치 ( weight * 10^scale ) */
+  @JsonIgnore
+  private long scaledWeight;
+
   /** 지수 산출에 필요한 소스 목록 */
   @JsonIgnore // 저장이 필요하지 않은 임시 데이터
   private List<String> sourceList;
@@ -28,6 +39,32 @@ public class SourceData implements Comparable<SourceData> {
   public SourceData() {
     this.sourceList = new ArrayList<>();
     this.weight = BigDecimal.ZERO;  // 초기화 추가
+    this.scale = -1;
+  }
+
+  /**
+   * fixed point 모드로 생성합니다.
+   * @param scale 가중치의 소수점 자리수
+   */
+  public SourceData(int scale) {
+    this.sourceList = new ArrayList<>();
+    this.weight = BigDecimal.ZERO;
+    this.scale = FixedPoint.checkScale(scale);
+  }
+
+  @JsonIgnore
+  public boolean isFixedPoint() {
+    return scale >= 0;
+  }
+
+  /**
+   * fixed point 모드이면 scaling 된 가중치를 손실 없이 BigDecimal 로 바꿔서 줍니다.
+   */
+  public BigDecimal getWeight() {
+    if (isFixedPoint()) {
+      return FixedPoint.toDecimal(scaledWeight, scale);
+    }
+    return weight;
   }
 
   public void clearSourceList() {
@@ -39,21 +76,40 @@ public class SourceData implements Comparable<SourceData> {
    * @param eachSectionWeight 추가할 섹션 가중치
    */
   public void addWeight(BigDecimal eachSectionWeight) {
-    this.weight = Objects.requireNonNull(weight).add(
-        Objects.requireNonNull(eachSectionWeight, "Section weight cannot be null")
-    );
+    Objects.requireNonNull(eachSectionWeight, "Section weight cannot be null");
+    if (isFixedPoint()) {
+      addScaledWeight(FixedPoint.toScaled(eachSectionWeight, scale));
+      return;
+    }
+    this.weight = Objects.requireNonNull(weight).add(eachSectionWeight);
+  }
+
+  /**
+   * fixed point 모드에서 이미 scaling 된 가중치를 더합니다. 객체를 만들지 않습니다.
+   * @throws ArithmeticException overflow 가 난 경우
+   */
+  public void addScaledWeight(long eachSectionScaledWeight) {
+    if (!isFixedPoint()) {
+      throw new IllegalStateException("SourceData is not fixed point mode");
+    }
+    this.scaledWeight = FixedPoint.add(this.scaledWeight, eachSectionScaledWeight);
   }
 
   public void weightSetToZero() {
     this.weight = BigDecimal.ZERO;
+    this.scaledWeight = 0L;
   }
 
   /**
    * 각 AssetsData의 weight를 기준으로 정렬할 때 사용합니다.
+   * 둘 다 같은 scale 의 fixed point 이면 long 비교만 합니다.
    */
   @Override
   public int compareTo(SourceData other) {
-    return this.weight.compareTo(other.weight);
+    if (this.isFixedPoint() && this.scale == other.scale) {
+      return Long.compare(this.scaledWeight, other.scaledWeight);
+    }
+    return this.getWeight().compareTo(other.getWeight());
   }
 
   @Override
@@ -1,36 +1,239 @@
 package com.devtaco.distribute.repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.stereotype.Component;
 
 import com.devtaco.distribute.model.ImplSpec;
 import com.devtaco.distribute.model.ImplValue;
 
+import lombok.extern.slf4j.Slf4j;
+
 /** facade pattern을 위해 만들어뒀다 */
+@Slf4j
 @Component
 public class DataManager {
 
   private DataRepository dataRepo;
 
-  public DataManager(DataRepository dataRepo) {
+  /** 계산된 값을 모아서 batch 로 저장한다. */
+  private ImplValueWriteBuffer valueWriteBuffer;
+
+  /** spec 별 마지막 저장 값. 바뀌지 않은 값은 저장하지 않는다. */
+  private LastValueStore lastValueStore;
+
+  /** spec 별 최근 값. 저장이 commit 되면 넣는다. */
+  private RecentValueStore recentValueStore;
+
+  /** startup 시 전체를 읽어두고, spec 변경 알림이 올 때마다 갱신한다. */
+  private final SpecCache specCache = new SpecCache();
+
+  public DataManager(DataRepository dataRepo, ImplValueWriteBuffer valueWriteBuffer, LastValueStore lastValueStore,
+      RecentValueStore recentValueStore) {
     this.dataRepo = dataRepo;
+    this.valueWriteBuffer = valueWriteBuffer;
+    this.lastValueStore = lastValueStore;
+    this.recentValueStore = recentValueStore;
+  }
+
+  /**
+   * spec 전체를 cache 에 올리고, spec 별 최근 값을 memory 에 채운다. {@link com.devtaco.distribute.job.JobRegistration} 보다 먼저 초기화된다.
+   */
+  @PostConstruct
+  public void loadSpecCache() {
+    specCache.loadAll(dataRepo.getAllJobSpec());
+    log.info("spec cache loaded. size: {}, version: {}", specCache.size(), specCache.getVersion());
+
+    recentValueStore.rebuild(specCache.getAll());
   }
 
+  /**
+   * @return spec 이 없으면 null
+   */
   public String getValueName(int id) {
-    return "valueName";
+    ImplSpec spec = getSpec(id);
+    return null == spec ? null : spec.getJobName();
   }
 
   public List<ImplSpec> getAllSpec() {
-    return new ArrayList<ImplSpec>();
+    return specCache.getAll();
   }
 
+  /**
+   * cache 에 없을 때만 DB 에서 읽어서 cache 에 넣는다. 읽는 사이 {@link #refreshSpecs(Collection)} 가 넣은 spec 이 있으면 그것을 쓴다.
+   * @return spec 이 없으면 null
+   */
   public ImplSpec getSpec(int id) {
-    return new ImplSpec(id, "valueName");
+    ImplSpec spec = specCache.get(id);
+    if (null != spec) {
+      return spec;
+    }
+
+    List<ImplSpec> specs = dataRepo.getJobSpec(id);
+    if (null == specs || specs.isEmpty()) {
+      return null;
+    }
+    return specCache.putAllIfAbsent(specs).get(0);
+  }
+
+  /**
+   * 여러 spec 을 한 번에 가져온다. 없는 id 는 결과에서 빠진다. <p>
+   * cache 에 없는 것들만 모아서 한 번의 query 로 읽는다. 읽는 사이 갱신된 spec 은 갱신된 것을 쓴다.
+   */
+  public List<ImplSpec> getSpecs(Collection<Integer> ids) {
+    List<ImplSpec> specs = new ArrayList<>(ids.size());
+    List<Integer> missIds = new ArrayList<>();
+    for (int id : ids) {
+      ImplSpec spec = specCache.get(id);
+      if (null == spec) {
+        missIds.add(id);
+      } else {
+        specs.add(spec);
+      }
+    }
+
+    if (!missIds.isEmpty()) {
+      specs.addAll(specCache.putAllIfAbsent(dataRepo.getJobSpecList(missIds)));
+    }
+    return specs;
+  }
+
+  /**
+   * spec 변경 알림을 받은 id 들을 DB 에서 다시 읽어 cache 를 갱신한다. <p>
+   * DB 에 없는 id 는 cache 에 남겨둔다. job 을 내릴 때 이전 spec 정보가 필요하기 때문이다. ( {@link #evictSpecs(Collection)} )
+   *
+   * @return DB 에서 읽은 최신 spec 들
+   */
+  public List<ImplSpec> refreshSpecs(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<ImplSpec> loaded = dataRepo.getJobSpecList(ids);
+    specCache.putAll(loaded);
+    return loaded;
+  }
+
+  /**
+   * 지워진 spec 들을 cache 에서 뺀다. job 을 내린 다음에 호출한다.
+   */
+  public void evictSpecs(Collection<Integer> ids) {
+    if (!ids.isEmpty()) {
+      specCache.removeAll(ids);
+      recentValueStore.evict(ids);
+    }
   }
 
-  public void saveValue(ImplValue value) {
+  public SpecCache getSpecCache() {
+    return specCache;
+  }
+
+  public RecentValueStore getRecentValueStore() {
+    return recentValueStore;
+  }
+
+  /**
+   * memory 에 있으면 DB 를 거치지 않는다. DB 에서 읽은 값은 memory 에 넣어둔다.
+   * @return 값이 없으면 null
+   */
+  public ImplValue getLatestValue(int id) {
+    ImplValue latest = recentValueStore.getLatest(id);
+    if (null != latest) {
+      return latest;
+    }
+    return loadLatestValue(id);
+  }
+
+  /**
+   * memory 를 보지 않고 DB 에서 최신 값을 읽어서 memory 에 넣는다. 다른 node 가 저장한 값을 가져올 때 쓴다. <p>
+   * memory 에 이미 있는 값이면 memory 는 바뀌지 않는다.
+   * @return 값이 없으면 null
+   */
+  public ImplValue loadLatestValue(int id) {
+    List<ImplValue> values = dataRepo.getLatestImplValue(id);
+    if (null == values || values.isEmpty()) {
+      return null;
+    }
+    ImplSpec spec = getSpec(id);
+    if (null != spec) {
+      recentValueStore.record(spec, values.get(0));
+    }
+    return values.get(0);
+  }
+
+  /**
+   * {@link #loadLatestValue(int)} 를 여러 spec 에 대해 한 번의 query 로 한다.
+   */
+  public void loadLatestValues(Collection<Integer> ids) {
+    List<ImplValue> values = dataRepo.getLatestImplValueList(ids);
+    if (null == values || values.isEmpty()) {
+      return;
+    }
+
+    Map<Integer, ImplValue> latestById = new HashMap<>();
+    for (ImplValue value : values) {
+      latestById.merge(value.getId(), value,
+          (left, right) -> left.getValueTsMillis() >= right.getValueTsMillis() ? left : right);
+    }
+    for (ImplValue latest : latestById.values()) {
+      ImplSpec spec = getSpec(latest.getId());
+      if (null != spec) {
+        recentValueStore.record(spec, latest);
+      }
+    }
+  }
+
+  /**
+   * 값을 write-behind buffer 에 넣고 바로 return 한다. 저장은 batch 로 이루어진다. <p>
+   * buffer 에 넣은 뒤에는 값을 수정하면 안된다.
+   *
+   * @return DB 에 commit 되면 true, 실패하면 false 로 완료되는 future
+   */
+  public CompletableFuture<Boolean> saveValue(ImplValue value) {
+    return valueWriteBuffer.enqueue(value).thenApply(saved -> {
+      ImplSpec spec = saved ? specCache.get(value.getId()) : null;
+      if (null != spec) {
+        recentValueStore.record(spec, value);
+      }
+      return saved;
+    });
+  }
+
+  /**
+   * 이 node 가 spec 의 job 을 내렸을 때 마지막으로 저장한 값을 잊는다. 다시 올리면 DB 의 최신 값과 다시 맞춘다.
+   */
+  public void forgetLastValue(int id) {
+    lastValueStore.invalidate(id);
+  }
+
+  /**
+   * 마지막으로 저장한 값과 같으면( spec 의 valueEpsilon 이내 ) 저장하지 않고, 가끔 heartbeat 만 남긴다. <p>
+   * 다르면 {@link #saveValue(ImplValue)} 와 같다.
+   *
+   * @return 저장 결과로 완료되는 future. 저장하지 않았으면 이미 UNCHANGED 로 완료되어 있다.
+   */
+  public CompletableFuture<ValueWriteResult> saveValueIfChanged(ImplSpec spec, ImplValue value) {
+    if (!lastValueStore.checkChanged(spec, value)) {
+      lastValueStore.heartbeatIfDue(value);
+      recentValueStore.markUnchanged(value.getId());
+      return CompletableFuture.completedFuture(ValueWriteResult.UNCHANGED);
+    }
+
+    return saveValue(value).thenApply(saved -> {
+      if (saved) {
+        return ValueWriteResult.WRITTEN;
+      }
+      // 저장되지 않은 값과 비교하지 않도록, 다음 값은 무조건 저장한다.
+      lastValueStore.invalidate(value.getId());
+      return ValueWriteResult.FAILED;
+    });
   }
 
 }
@@ -1,5 +1,6 @@
 package com.devtaco.distribute.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import com.devtaco.distribute.model.ImplSpec;
@@ -18,12 +19,30 @@ public interface DataRepository {
 
   List<ImplSpec> getJobSpec(int id);
 
+  /** 여러 spec 을 한 번의 query 로 가져온다. ( WHERE id IN (...) ) */
+  List<ImplSpec> getJobSpecList(Collection<Integer> ids);
+
   public List<ImplValue> getLatestImplValue(int id);
 
+  /** 여러 spec 의 최근 값들을 한 번의 query 로 가져온다. ( WHERE id IN (...) ) */
+  public List<ImplValue> getLatestImplValueList(Collection<Integer> ids);
+
   public boolean saveImplValue(ImplValue value);
 
+  /**
+   * 여러 값을 JDBC batch insert ( 또는 PostgreSQL COPY ) 로 한 번에 저장한다. 하나의 transaction 으로 commit 한다.
+   * @return 각 값의 update count. ( {@link java.sql.Statement#executeBatch()} 와 같은 의미 )
+   */
+  public int[] saveImplValueBatch(List<ImplValue> values);
+
   public boolean updateImplvalue(ImplValue value);
 
+  /**
+   * ( id, valueTsMillis ) 로 찾은 row 들의 calculateTsMillis 를 JDBC batch update 로 한 번에 바꾼다. 값은 바꾸지 않는다.
+   * @return 각 row 의 update count. 찾지 못한 row 는 0
+   */
+  public int[] updateImplValueBatch(List<ImplValue> values);
+
   public String safeSqlFormat(String fmt, Object... args);
 
 }
@@ -0,0 +1,245 @@
+package com.devtaco.distribute.repository;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import com.devtaco.distribute.config.ValueWriteBufferConfig;
+import com.devtaco.distribute.model.ImplValue;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 계산된 {@link ImplValue} 를 모아서 batch 로 저장하는 write-behind buffer. <p>
+ * 여러 job 이 같은 시각에 값을 저장해도 row 하나씩 왕복하지 않고, 한 번의 batch insert 로 저장한다. <p>
+ *
+ * - ack : {@link #enqueue(ImplValue)} 가 주는 future 는 DB 에 commit 된 뒤에 완료된다. <p>
+ * - backpressure : buffer 가 가득 차면 job thread 가 offerTimeout 만큼 기다리고, 그래도 자리가 없으면 직접 저장한다. <p>
+ * - touch : 이미 저장된 row 의 계산 시각만 바꾸는 heartbeat 도 같은 buffer 로 모아서 batch update 한다.
+ */
+@Slf4j
+@Component
+public class ImplValueWriteBuffer {
+
+  /** 저장할 값과, 저장 결과를 알려줄 future */
+  private static class PendingWrite {
+    private final ImplValue value;
+
+    /** true 면 insert 하지 않고, 이미 있는 row 의 계산 시각만 바꾼다. */
+    private final boolean touch;
+    private final CompletableFuture<Boolean> ack = new CompletableFuture<>();
+
+    PendingWrite(ImplValue value, boolean touch) {
+      this.value = value;
+      this.touch = touch;
+    }
+  }
+
+  private final DataRepository dataRepo;
+
+  private final BlockingQueue<PendingWrite> buffer;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final long offerTimeoutMillis;
+
+  private Thread flusher;
+  private volatile boolean running;
+
+  public ImplValueWriteBuffer(DataRepository dataRepo, ValueWriteBufferConfig config) {
+    this.dataRepo = dataRepo;
+    this.buffer = new ArrayBlockingQueue<>(config.getCapacity());
+    this.batchSize = config.getBatchSize();
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMillis());
+    this.offerTimeoutMillis = config.getOfferTimeoutMillis();
+  }
+
+  @PostConstruct
+  public void start() {
+    this.running = true;
+    this.flusher = new Thread(this::flushLoop, "value-write-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * 남아있는 값들을 모두 저장하고 종료한다.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    this.running = false;
+    this.flusher.interrupt();
+    this.flusher.join(TimeUnit.SECONDS.toMillis(10));
+
+    List<PendingWrite> remains = new ArrayList<>();
+    buffer.drainTo(remains);
+    while (!remains.isEmpty()) {
+      int size = Math.min(batchSize, remains.size());
+      flush(new ArrayList<>(remains.subList(0, size)));
+      remains.subList(0, size).clear();
+    }
+  }
+
+  /**
+   * 값을 buffer 에 넣고 바로 return 한다.
+   *
+   * @return DB 에 저장되면 true, 실패하면 false 로 완료되는 future
+   */
+  public CompletableFuture<Boolean> enqueue(ImplValue value) {
+    return enqueue(new PendingWrite(value, false));
+  }
+
+  /**
+   * 이미 저장된 row ( id, valueTsMillis 로 찾는다 ) 의 calculateTsMillis 를 value 의 것으로 바꾼다. 값은 바꾸지 않는다.
+   *
+   * @return row 를 바꿨으면 true, row 가 없거나 실패하면 false 로 완료되는 future
+   */
+  public CompletableFuture<Boolean> enqueueTouch(ImplValue row) {
+    return enqueue(new PendingWrite(row, true));
+  }
+
+  private CompletableFuture<Boolean> enqueue(PendingWrite pending) {
+    ImplValue value = pending.value;
+    try {
+      if (buffer.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        return pending.ack;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // buffer 가 계속 가득 차 있으면 값을 버리지 않고 호출한 thread 에서 직접 저장한다.
+    log.warn("value write buffer is full, save directly. id: {}", value.getId());
+    flushOneByOne(List.of(pending));
+    return pending.ack;
+  }
+
+  public int getPendingCount() {
+    return buffer.size();
+  }
+
+  /**
+   * 첫 값이 들어오면 batchSize 가 되거나 flushInterval 이 지날 때까지 모아서 저장한다.
+   */
+  private void flushLoop() {
+    while (running) {
+      // 꺼낸 값은 queue 에 없으므로, 어떤 경우에도 이 thread 가 저장하고 ack 해야 한다.
+      List<PendingWrite> batch = new ArrayList<>(batchSize);
+      try {
+        batch.add(buffer.take());
+
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        long remainNanos;
+        while (batch.size() < batchSize && (remainNanos = deadline - System.nanoTime()) > 0) {
+          if (0 == buffer.drainTo(batch, batchSize - batch.size())) {
+            PendingWrite next = buffer.poll(remainNanos, TimeUnit.NANOSECONDS);
+            if (null == next) {
+              break;
+            }
+            batch.add(next);
+          }
+        }
+
+        flush(batch);
+      } catch (InterruptedException e) {
+        // stop() 이 깨운 경우. 모으던 값은 여기서 저장하고, 남은 것은 stop() 이 저장한다.
+        flushSafely(batch);
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        // flusher 가 죽으면 아무것도 저장되지 않으므로, 이 batch 만 실패로 끝내고 계속 돈다.
+        log.error("unexpected error while flushing {} values", batch.size(), e);
+        for (PendingWrite pending : batch) {
+          pending.ack.complete(false);
+        }
+      }
+    }
+  }
+
+  private void flushSafely(List<PendingWrite> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      flush(batch);
+    } catch (RuntimeException e) {
+      log.error("unexpected error while flushing {} values", batch.size(), e);
+      for (PendingWrite pending : batch) {
+        pending.ack.complete(false);
+      }
+    }
+  }
+
+  /**
+   * insert 와 touch 를 나눠서 각각 batch 로 저장한다.
+   */
+  private void flush(List<PendingWrite> batch) {
+    List<PendingWrite> inserts = new ArrayList<>(batch.size());
+    List<PendingWrite> touches = new ArrayList<>();
+    for (PendingWrite pending : batch) {
+      (pending.touch ? touches : inserts).add(pending);
+    }
+
+    if (!inserts.isEmpty()) {
+      flushBatch(inserts, false);
+    }
+    if (!touches.isEmpty()) {
+      flushBatch(touches, true);
+    }
+  }
+
+  /**
+   * batch 로 저장한다. batch 가 실패하면 어떤 값이 문제인지 알 수 없으므로 하나씩 다시 저장한다.
+   */
+  private void flushBatch(List<PendingWrite> writes, boolean touch) {
+    List<ImplValue> values = new ArrayList<>(writes.size());
+    for (PendingWrite pending : writes) {
+      values.add(pending.value);
+    }
+
+    int[] updateCounts;
+    try {
+      updateCounts = touch ? dataRepo.updateImplValueBatch(values) : dataRepo.saveImplValueBatch(values);
+    } catch (RuntimeException e) {
+      log.error("fail to {} {} values by batch, retry one by one", touch ? "touch" : "save", writes.size(), e);
+      flushOneByOne(writes);
+      return;
+    }
+
+    for (int i = 0; i < writes.size(); i++) {
+      boolean saved = i < updateCounts.length && isSucceeded(updateCounts[i], touch);
+      writes.get(i).ack.complete(saved);
+    }
+  }
+
+  private void flushOneByOne(List<PendingWrite> writes) {
+    for (PendingWrite pending : writes) {
+      try {
+        pending.ack.complete(pending.touch
+            ? dataRepo.updateImplvalue(pending.value)
+            : dataRepo.saveImplValue(pending.value));
+      } catch (RuntimeException e) {
+        log.error("fail to save value. id: {}", pending.value.getId(), e);
+        pending.ack.complete(false);
+      }
+    }
+  }
+
+  /**
+   * touch 는 row 를 찾지 못하면 ( update count 0 ) 실패로 본다.
+   */
+  private static boolean isSucceeded(int updateCount, boolean touch) {
+    if (Statement.SUCCESS_NO_INFO == updateCount) {
+      return true;
+    }
+    return touch ? updateCount > 0 : updateCount >= 0;
+  }
+}
@@ -0,0 +1,263 @@
+package com.devtaco.distribute.repository;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import com.devtaco.distribute.model.ImplSpec;
+import com.devtaco.distribute.model.ImplValue;
+import com.devtaco.distribute.util.CronUtils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * spec 별로 마지막으로 저장한 값을 memory 에 들고 있다가, 새 값이 같으면( spec 의 epsilon 이내 ) 저장을 건너뛰게 한다. <p>
+ * 처음 보는 spec 은 {@link RecentValueStore} 와 {@link DataRepository#getLatestImplValue(int)} 중 최신 값으로 채운다. <p>
+ * resharding / failover 로 다른 node 가 같은 spec 을 저장했을 수 있으므로, 다음 경우에는 DB 의 최신 값과 다시 맞춘다. <p>
+ * - 마지막으로 맞춘 지 RECHECK_INTERVAL 이 지났을 때 <p>
+ * - 바로 전 회차( cron tick ) 를 이 node 가 계산하지 않았을 때. 즉 다른 node 에게서 spec 을 넘겨받았을 때 <p>
+ * 이 node 가 더 이상 계산하지 않는 spec ( job 이 내려가거나 다른 node 로 넘어감 ) 은 IDLE_EVICT_INTERVAL 뒤에 지운다. <p>
+ * 값이 계속 같더라도 HEARTBEAT_INTERVAL 마다 마지막으로 저장한 row 의 계산 시각은 갱신해서, 산출이 살아있다는 것을 남긴다. <p>
+ * heartbeat 는 ( id, 저장한 row 의 valueTsMillis ) 로 row 를 찾아 calculateTsMillis 만 바꾸고, 값과 valueTsMillis 는 그대로 둔다.
+ * {@link ImplValueWriteBuffer} 로 모아서 batch update 한다.
+ */
+@Slf4j
+@Component
+public class LastValueStore {
+
+  private static final long HEARTBEAT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** 마지막 값을 DB 와 다시 맞추는 주기. 다른 node 가 저장한 값을 이보다 오래 모르고 있지 않는다. */
+  private static final long RECHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  /** 이 시간 동안 쓰지 않은 spec 의 마지막 값은 지운다. 다시 쓰게 되면 DB 와 맞추므로 지워도 손해가 없다. */
+  private static final long IDLE_EVICT_INTERVAL_MILLIS = RECHECK_INTERVAL_MILLIS * 2;
+
+  /** spec 하나의 마지막 저장 상태 */
+  private static class LastValue {
+
+    /** null 이면 마지막 값을 몰라서 항상 저장해야 하는 경우 ( DB 에도 값이 없음 ) */
+    private final BigDecimal value;
+
+    /** 마지막으로 저장한 row 의 valueTsMillis. heartbeat 는 이 row 를 바꾼다. */
+    private final long valueTsMillis;
+    private volatile long heartbeatMillis;
+
+    /** DB 와 마지막으로 맞춘 시각 */
+    private final long verifiedMillis;
+
+    /** 이 node 가 마지막으로 비교한 값의 valueTsMillis ( cron tick ). 0 이면 아직 비교하지 않음 */
+    private volatile long checkedTsMillis;
+    private volatile long usedMillis;
+
+    LastValue(BigDecimal value, long valueTsMillis, long heartbeatMillis, long verifiedMillis) {
+      this.value = value;
+      this.valueTsMillis = valueTsMillis;
+      this.heartbeatMillis = heartbeatMillis;
+      this.verifiedMillis = verifiedMillis;
+      this.usedMillis = verifiedMillis;
+    }
+  }
+
+  private final DataRepository dataRepo;
+
+  private final RecentValueStore recentValueStore;
+
+  private final ImplValueWriteBuffer writeBuffer;
+
+  private final ConcurrentHashMap<Integer, LastValue> lastValueById = new ConcurrentHashMap<>();
+
+  private final LongAdder writtenCount = new LongAdder();
+  private final LongAdder suppressedCount = new LongAdder();
+  private final LongAdder recheckCount = new LongAdder();
+
+  private final ScheduledExecutorService evictTimer =
+      Executors.newSingleThreadScheduledExecutor(threadFactory("last-value-evict", true));
+
+  public LastValueStore(DataRepository dataRepo, RecentValueStore recentValueStore, ImplValueWriteBuffer writeBuffer,
+      MeterRegistry registry) {
+    this.dataRepo = dataRepo;
+    this.recentValueStore = recentValueStore;
+    this.writeBuffer = writeBuffer;
+
+    FunctionCounter.builder("distribute.value.write", writtenCount, LongAdder::sum)
+        .description("저장한 값의 수")
+        .tag("result", "written")
+        .register(registry);
+    FunctionCounter.builder("distribute.value.write", suppressedCount, LongAdder::sum)
+        .description("이전 값과 같아서 저장하지 않은 값의 수")
+        .tag("result", "suppressed")
+        .register(registry);
+    Gauge.builder("distribute.value.write.reduction", this, LastValueStore::getWriteReductionRatio)
+        .description("저장하지 않고 건너뛴 비율")
+        .register(registry);
+    FunctionCounter.builder("distribute.value.last.recheck", recheckCount, LongAdder::sum)
+        .description("마지막 값을 DB 와 다시 맞춘 횟수")
+        .register(registry);
+
+    evictTimer.scheduleWithFixedDelay(this::evictIdle, RECHECK_INTERVAL_MILLIS, RECHECK_INTERVAL_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void close() {
+    evictTimer.shutdownNow();
+  }
+
+  /**
+   * 새 값이 마지막으로 저장한 값과 같은지 본다. 다르면 마지막 값을 새 값으로 바꿔둔다. <p>
+   * 저장이 실패하면 {@link #invalidate(int)} 해서 다음 값은 무조건 저장되게 한다.
+   *
+   * @return 저장해야 하면 true
+   */
+  public boolean checkChanged(ImplSpec spec, ImplValue value) {
+    BigDecimal newValue = value.getValue();
+    long now = System.currentTimeMillis();
+    LastValue last = lastValueById.compute(spec.getId(),
+        (id, current) -> null == current || needsRecheck(spec, value, current, now) ? loadLatest(id, current) : current);
+    last.checkedTsMillis = value.getValueTsMillis();
+    last.usedMillis = now;
+
+    if (null != newValue && null != last.value && isWithin(last.value, newValue, spec.getValueEpsilon())) {
+      suppressedCount.increment();
+      return false;
+    }
+
+    LastValue written = new LastValue(newValue, value.getValueTsMillis(), now, now);
+    written.checkedTsMillis = value.getValueTsMillis();
+    lastValueById.put(spec.getId(), written);
+    writtenCount.increment();
+    return true;
+  }
+
+  /**
+   * 값이 바뀌지 않은 채 HEARTBEAT_INTERVAL 이 지났으면, 마지막으로 저장한 row 의 계산 시각을 value 의 계산 시각으로 바꾼다. <p>
+   * value 자체는 저장하지 않은 값이므로 쓰지 않는다. 바뀌는 row 는 ( value 의 id, 마지막으로 저장한 row 의 valueTsMillis ) 이다.
+   */
+  public void heartbeatIfDue(ImplValue value) {
+    LastValue last = lastValueById.get(value.getId());
+    long now = System.currentTimeMillis();
+    if (null == last || null == last.value || now - last.heartbeatMillis < HEARTBEAT_INTERVAL_MILLIS) {
+      return;
+    }
+    last.heartbeatMillis = now;
+
+    ImplValue row = new ImplValue(value.getId());
+    row.setValueTsMillis(last.valueTsMillis);
+    row.setCalculateTsMillis(value.getCalculateTsMillis());
+    row.setValue(last.value);
+
+    writeBuffer.enqueueTouch(row).thenAccept(touched -> {
+      if (!touched) {
+        // 마지막 row 가 아직 저장 중이거나 지워진 경우. 다음 값이 바뀌면 새 row 가 저장된다.
+        log.debug("fail to update heartbeat of value. id: {}, valueTs: {}", row.getId(), row.getValueTsMillis());
+      }
+    });
+  }
+
+  /**
+   * 다음 값은 무조건 저장한다. 저장이 실패했거나, 이 node 가 spec 의 job 을 내렸을 때 호출한다.
+   */
+  public void invalidate(int id) {
+    lastValueById.remove(id);
+  }
+
+  /**
+   * @return 저장하지 않고 건너뛴 값의 비율 ( 0 ~ 1 )
+   */
+  public double getWriteReductionRatio() {
+    long suppressed = suppressedCount.sum();
+    long total = suppressed + writtenCount.sum();
+    return 0 == total ? 0.0 : (double) suppressed / total;
+  }
+
+  /**
+   * 이 node 가 더 이상 비교하지 않는 spec 의 마지막 값을 지운다. evictTimer 에서 호출한다.
+   */
+  void evictIdle() {
+    long now = System.currentTimeMillis();
+    lastValueById.values().removeIf(last -> now - last.usedMillis > IDLE_EVICT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @return 마지막으로 맞춘 지 오래되었거나, 바로 전 회차를 이 node 가 계산하지 않았으면 true
+   */
+  private static boolean needsRecheck(ImplSpec spec, ImplValue value, LastValue last, long now) {
+    if (now - last.verifiedMillis > RECHECK_INTERVAL_MILLIS) {
+      return true;
+    }
+
+    long checkedTsMillis = last.checkedTsMillis;
+    long valueTsMillis = value.getValueTsMillis();
+    if (0L == checkedTsMillis || checkedTsMillis == valueTsMillis) {
+      return false; // 방금 DB 와 맞췄거나, 같은 회차를 다시 계산한 경우
+    }
+
+    ZonedDateTime previousTick;
+    try {
+      previousTick = CronUtils.previousExecutionDate(spec.getCronExpression(),
+          ZonedDateTime.ofInstant(Instant.ofEpochMilli(valueTsMillis - 1), ZoneOffset.UTC));
+    } catch (IllegalArgumentException e) {
+      return false; // 회차를 알 수 없으면 시간으로만 판단한다.
+    }
+    return null == previousTick || previousTick.toInstant().toEpochMilli() != checkedTsMillis;
+  }
+
+  /**
+   * 이 node 가 알고 있는 값( current ), {@link RecentValueStore}, DB 중 valueTsMillis 가 가장 최신인 값으로 맞춘다. <p>
+   * 이 node 가 저장한 값이 아직 write buffer 에 있으면 DB 보다 최신이므로 그대로 둔다.
+   */
+  private LastValue loadLatest(int id, LastValue current) {
+    recheckCount.increment();
+    long now = System.currentTimeMillis();
+
+    ImplValue latest = recentValueStore.getLatest(id);
+    try {
+      List<ImplValue> stored = dataRepo.getLatestImplValue(id);
+      if (null != stored && !stored.isEmpty() && null != stored.get(0).getValue()
+          && (null == latest || stored.get(0).getValueTsMillis() >= latest.getValueTsMillis())) {
+        latest = stored.get(0);
+      }
+    } catch (RuntimeException e) {
+      log.warn("fail to load latest value. id: {}", id, e);
+    }
+
+    if (null != current && null != current.value
+        && (null == latest || current.valueTsMillis > latest.getValueTsMillis())) {
+      LastValue kept = new LastValue(current.value, current.valueTsMillis, current.heartbeatMillis, now);
+      kept.checkedTsMillis = current.checkedTsMillis;
+      return kept;
+    }
+    if (null == latest || null == latest.getValue()) {
+      return new LastValue(null, 0L, 0L, now);
+    }
+    if (null != current && null != current.value && current.valueTsMillis != latest.getValueTsMillis()) {
+      log.info("last value replaced by value saved elsewhere. id: {}, valueTs: {} -> {}", id, current.valueTsMillis,
+          latest.getValueTsMillis());
+    }
+    return new LastValue(latest.getValue(), latest.getValueTsMillis(), now, now);
+  }
+
+  private static boolean isWithin(BigDecimal last, BigDecimal current, BigDecimal epsilon) {
+    if (null == epsilon || epsilon.signum() <= 0) {
+      return 0 == last.compareTo(current);
+    }
+    return current.subtract(last).abs().compareTo(epsilon) <= 0;
+  }
+}
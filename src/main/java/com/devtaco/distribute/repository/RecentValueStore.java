@@ -0,0 +1,545 @@
+package com.devtaco.distribute.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import com.devtaco.distribute.config.RecentValueStoreConfig;
+import com.devtaco.distribute.model.FixedPoint;
+import com.devtaco.distribute.model.ImplSpec;
+import com.devtaco.distribute.model.ImplValue;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * spec 별 최근 값들을 memory 에 들고 있는 time series store. <p>
+ * 저장이 commit 된 값을 {@link #record(ImplSpec, ImplValue)} 로 넣고, startup 시에는 DB 의 최근 값으로 채운다. <p>
+ * 최신 값과 짧은 구간 조회를 DB query 없이 처리한다. <p>
+ *
+ * - fixed point spec 의 값은 valueScale 로 scaling 된 long 배열에, BigDecimal 모드 spec 의 값은 BigDecimal 배열에 그대로 들고 있다.
+ *   어느 쪽이든 DB 의 값과 같다. <p>
+ * - spec 하나에 고정 크기의 배열들( valueTs / calculateTs / 값 / version ) 을 ring buffer 로 쓴다. <p>
+ * - fixed point spec 인데 scale 에 맞지 않는 값이 들어오면 그 spec 의 값들을 버린다. 다시 값이 쌓일 때까지 조회는 DB 로 간다. <p>
+ * - startup 시에는 여러 spec 의 최근 값을 한 번의 query 로 묶어서 채운다. <p>
+ * - 값이 들어올 때마다 store 전체의 version 이 올라가고, 각 값과 spec 은 자신이 바뀐 시점의 version 을 가진다. <p>
+ *   ( 조회 API 의 ETag, stream 의 event id ) 재시작하면 version 이 처음부터 다시 올라가므로 {@link #getEpoch()} 와 같이 쓴다.
+ */
+@Slf4j
+@Component
+public class RecentValueStore {
+
+  /** startup 시 한 번의 query 로 최근 값을 가져올 spec 수 */
+  private static final int REBUILD_BATCH_SIZE = 500;
+
+  /** BigDecimal 모드 spec 의 ring 이 갖는 scale */
+  private static final int DECIMAL_SCALE = -1;
+
+  /**
+   * 최근 값 하나를 받는다. ( {@link #forEachRecent(int, long, PointConsumer)} )
+   */
+  @FunctionalInterface
+  public interface PointConsumer {
+    void accept(long valueTsMillis, long calculateTsMillis, BigDecimal value);
+  }
+
+  /**
+   * store 에 들어간 값 하나와 그 version. listener 와 {@link #latestSince(Collection, long, long, int)} 로 나간다.
+   */
+  @Getter
+  public static class RecordedValue {
+    private final int id;
+    private final long version;
+    private final long valueTsMillis;
+    private final long calculateTsMillis;
+    private final BigDecimal value;
+
+    RecordedValue(int id, long version, long valueTsMillis, long calculateTsMillis, BigDecimal value) {
+      this.id = id;
+      this.version = version;
+      this.valueTsMillis = valueTsMillis;
+      this.calculateTsMillis = calculateTsMillis;
+      this.value = value;
+    }
+  }
+
+  /**
+   * spec 하나의 최근 값들. valueTs 순서로 쌓인다. <p>
+   * fixed point spec 이면 scaledValues 를, BigDecimal 모드 spec 이면 decimalValues 를 쓴다. <p>
+   * 쓰기와 읽기가 모두 짧아서 lock 하나로 막는다.
+   */
+  private static class ValueRing {
+    /** BigDecimal 모드이면 DECIMAL_SCALE */
+    private final int scale;
+    private final long[] valueTsMillis;
+    private final long[] calculateTsMillis;
+    private final long[] scaledValues;
+    private final BigDecimal[] decimalValues;
+    private final long[] versions;
+
+    /** 다음에 쓸 위치 */
+    private int head;
+    private int count;
+
+    /** 마지막으로 바뀐 시점의 store version */
+    private volatile long version;
+
+    /** 가득 차서 밀려난 값들 중 가장 큰 version. 이 version 이후를 빠짐없이 줄 수 있는지 판단한다. */
+    private long evictedVersion;
+
+    /** 마지막으로 값이 들어왔거나, 이 node 가 계산해서 마지막 값과 같다는 것을 확인한 시각 */
+    private volatile long recordedMillis;
+
+    /**
+     * @param evictedVersion 이전 ring 을 버리고 새로 만드는 경우, 버릴 때의 store version
+     */
+    ValueRing(int capacity, int scale, long evictedVersion) {
+      this.scale = scale;
+      this.evictedVersion = evictedVersion;
+      this.valueTsMillis = new long[capacity];
+      this.calculateTsMillis = new long[capacity];
+      this.scaledValues = isDecimal() ? null : new long[capacity];
+      this.decimalValues = isDecimal() ? new BigDecimal[capacity] : null;
+      this.versions = new long[capacity];
+    }
+
+    boolean isDecimal() {
+      return DECIMAL_SCALE == scale;
+    }
+
+    /**
+     * 마지막 값보다 오래된 값은 버리고, 같은 시점의 값은 덮어쓴다. ( 재계산 ) <p>
+     * 마지막 값과 valueTs, calculateTs 가 모두 같으면 이미 들어온 값이므로 버린다. ( DB 에서 다시 읽은 경우 )
+     *
+     * @param scaledValue   fixed point 이면 scaling 된 값. BigDecimal 모드이면 쓰지 않는다.
+     * @param decimalValue  BigDecimal 모드이면 값. fixed point 이면 쓰지 않는다.
+     * @return 버렸으면 false
+     */
+    synchronized boolean append(long valueTs, long calculateTs, long scaledValue, BigDecimal decimalValue,
+        long newVersion) {
+      int index = head;
+      if (count > 0) {
+        int last = indexOf(count - 1);
+        if (valueTs < valueTsMillis[last]
+            || (valueTs == valueTsMillis[last] && calculateTs == calculateTsMillis[last])) {
+          return false;
+        }
+        if (valueTs == valueTsMillis[last]) {
+          index = last;
+        }
+      }
+
+      rememberEvicted(index);
+      valueTsMillis[index] = valueTs;
+      calculateTsMillis[index] = calculateTs;
+      if (isDecimal()) {
+        decimalValues[index] = decimalValue;
+      } else {
+        scaledValues[index] = scaledValue;
+      }
+      versions[index] = newVersion;
+      version = newVersion;
+      recordedMillis = System.currentTimeMillis();
+      if (index != head) {
+        return true;
+      }
+
+      head = (head + 1) % valueTsMillis.length;
+      if (count < valueTsMillis.length) {
+        count++;
+      }
+      return true;
+    }
+
+    /**
+     * 가득 찼으면 다음에 쓸 자리의 값이 밀려나므로, 그 version 을 기억해둔다. 쓰기 전에 부른다.
+     */
+    private void rememberEvicted(int index) {
+      if (index == head && count == valueTsMillis.length) {
+        evictedVersion = Math.max(evictedVersion, versions[index]);
+      }
+    }
+
+    private BigDecimal valueAt(int index) {
+      return isDecimal() ? decimalValues[index] : FixedPoint.toDecimal(scaledValues[index], scale);
+    }
+
+    /**
+     * @param i 0 이 가장 오래된 값
+     */
+    private int indexOf(int i) {
+      int capacity = valueTsMillis.length;
+      return (head - count + i + capacity) % capacity;
+    }
+
+    synchronized ImplValue latest(int id) {
+      if (0 == count) {
+        return null;
+      }
+      int last = indexOf(count - 1);
+      ImplValue value = new ImplValue(id);
+      value.setValueTsMillis(valueTsMillis[last]);
+      value.setCalculateTsMillis(calculateTsMillis[last]);
+      if (isDecimal()) {
+        value.setValue(decimalValues[last]);
+      } else {
+        value.setScaledValue(scaledValues[last], scale);
+      }
+      return value;
+    }
+
+    synchronized void forEachFrom(long fromValueTsMillis, PointConsumer consumer) {
+      for (int i = 0; i < count; i++) {
+        int index = indexOf(i);
+        if (valueTsMillis[index] >= fromValueTsMillis) {
+          consumer.accept(valueTsMillis[index], calculateTsMillis[index], valueAt(index));
+        }
+      }
+    }
+
+    /**
+     * @return valueTs 보다 앞선 마지막 값의 index. 없으면 -1
+     */
+    private int lastIndexBefore(long valueTs) {
+      for (int i = count - 1; i >= 0; i--) {
+        int index = indexOf(i);
+        if (valueTsMillis[index] < valueTs) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * 덮어쓰는 것은 마지막 값뿐이므로, version 은 오래된 값부터 커진다.
+     *
+     * @return uptoVersion 이하인 값 중 가장 최근 값. 그 값이 afterVersion 이하이면 null
+     */
+    synchronized RecordedValue latestBetween(int id, long afterVersion, long uptoVersion) {
+      for (int i = count - 1; i >= 0; i--) {
+        int index = indexOf(i);
+        if (versions[index] <= uptoVersion) {
+          return versions[index] <= afterVersion ? null
+              : new RecordedValue(id, versions[index], valueTsMillis[index], calculateTsMillis[index], valueAt(index));
+        }
+      }
+      return null;
+    }
+
+    /**
+     * ( afterVersion, uptoVersion ] 사이에 들어온 값을 모두 out 에 넣는다. 같은 회차를 덮어쓴 값은 마지막 값만 남아있다.
+     *
+     * @return 그 사이의 값이 밀려나서 빠짐없이 줄 수 없거나, out 이 limit 개를 넘으면 false
+     */
+    synchronized boolean collectBetween(int id, long afterVersion, long uptoVersion, List<RecordedValue> out,
+        int limit) {
+      if (evictedVersion > afterVersion) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = indexOf(i);
+        if (versions[index] <= afterVersion || versions[index] > uptoVersion) {
+          continue;
+        }
+        if (out.size() >= limit) {
+          return false;
+        }
+        out.add(new RecordedValue(id, versions[index], valueTsMillis[index], calculateTsMillis[index], valueAt(index)));
+      }
+      return true;
+    }
+
+    synchronized boolean isWithinChange(long valueTs, BigDecimal value, double maxChangeRatio) {
+      int prev = lastIndexBefore(valueTs);
+      if (prev < 0) {
+        return true;
+      }
+      BigDecimal prevValue = valueAt(prev);
+      BigDecimal allowed = prevValue.abs().multiply(BigDecimal.valueOf(maxChangeRatio));
+      return value.subtract(prevValue).abs().compareTo(allowed) <= 0;
+    }
+
+    synchronized int size() {
+      return count;
+    }
+  }
+
+  private final DataRepository dataRepo;
+
+  private final int pointsPerSpec;
+  private final boolean loadOnStartup;
+
+  private final ConcurrentHashMap<Integer, ValueRing> ringById = new ConcurrentHashMap<>();
+
+  /** 값을 버린 spec -> 버릴 때의 version. 새 ring 을 만들 때 그 사이의 값이 빠졌다는 것을 넘겨준다. */
+  private final ConcurrentHashMap<Integer, Long> droppedVersionById = new ConcurrentHashMap<>();
+
+  /** 값이 들어올 때마다 1씩 증가 */
+  private final AtomicLong version = new AtomicLong();
+
+  /** process 를 구분한다. version 과 같이 써서 재시작 전후의 version 이 섞이지 않게 한다. */
+  @Getter
+  private final String epoch = Long.toHexString(System.currentTimeMillis());
+
+  /** 값이 들어올 때마다 version 순서대로 불린다. */
+  private final List<Consumer<RecordedValue>> listeners = new CopyOnWriteArrayList<>();
+
+  public RecentValueStore(DataRepository dataRepo, RecentValueStoreConfig config) {
+    this.dataRepo = dataRepo;
+    this.pointsPerSpec = Math.max(1, config.getPointsPerSpec());
+    this.loadOnStartup = config.isLoadOnStartup();
+  }
+
+  /**
+   * DB 의 최근 값들로 다시 채운다. {@link DataManager} 가 spec cache 를 올린 뒤 호출한다. <p>
+   * REBUILD_BATCH_SIZE 개의 spec 마다 한 번씩 query 한다. 실패한 묶음은 건너뛰고, 그 spec 들은 처음 조회될 때 DB 에서 읽는다.
+   */
+  public void rebuild(Collection<ImplSpec> specs) {
+    if (!loadOnStartup) {
+      return;
+    }
+
+    List<ImplSpec> specList = new ArrayList<>(specs);
+    int loaded = 0;
+    for (int from = 0; from < specList.size(); from += REBUILD_BATCH_SIZE) {
+      List<ImplSpec> chunk = specList.subList(from, Math.min(from + REBUILD_BATCH_SIZE, specList.size()));
+      loaded += rebuildChunk(chunk);
+    }
+    log.info("recent value store loaded. specs: {}, values: {}", ringById.size(), loaded);
+  }
+
+  private int rebuildChunk(List<ImplSpec> specs) {
+    List<Integer> ids = specs.stream().map(ImplSpec::getId).collect(Collectors.toList());
+    List<ImplValue> values;
+    try {
+      values = dataRepo.getLatestImplValueList(ids);
+    } catch (RuntimeException e) {
+      log.warn("fail to load recent values of {} specs", ids.size(), e);
+      return 0;
+    }
+    if (null == values || values.isEmpty()) {
+      return 0;
+    }
+
+    Map<Integer, List<ImplValue>> valuesById = values.stream().collect(Collectors.groupingBy(ImplValue::getId));
+    int loaded = 0;
+    for (ImplSpec spec : specs) {
+      List<ImplValue> specValues = valuesById.get(spec.getId());
+      if (null == specValues) {
+        continue;
+      }
+      specValues.sort(Comparator.comparingLong(ImplValue::getValueTsMillis));
+      for (ImplValue value : specValues) {
+        record(spec, value);
+      }
+      loaded += specValues.size();
+    }
+    return loaded;
+  }
+
+  /**
+   * commit 된 값을 넣는다. 값이 없으면 넣지 않는다. <p>
+   * fixed point spec 인데 scale 에 맞출 수 없는 값이면, 틀린 값을 주지 않도록 spec 의 값들을 모두 버린다.
+   */
+  public void record(ImplSpec spec, ImplValue value) {
+    BigDecimal decimal = value.getValue();
+    if (null == decimal) {
+      return;
+    }
+
+    ValueRing ring = ringOf(spec);
+    long scaledValue = 0L;
+    if (!ring.isDecimal()) {
+      try {
+        scaledValue = value.getValueScale() == ring.scale
+            ? value.getScaledValue()
+            : FixedPoint.toScaled(decimal, ring.scale);
+      } catch (ArithmeticException e) {
+        log.warn("value does not fit fixed point of scale {}, drop recent values. id: {}, value: {}",
+            ring.scale, value.getId(), decimal);
+        if (ringById.remove(spec.getId(), ring)) {
+          droppedVersionById.put(spec.getId(), version.get());
+        }
+        return;
+      }
+    }
+
+    // listener 가 version 순서대로 받도록, version 증가부터 listener 호출까지 한 번에 하나씩 처리한다.
+    synchronized (listeners) {
+      long newVersion = version.incrementAndGet();
+      if (!ring.append(value.getValueTsMillis(), value.getCalculateTsMillis(), scaledValue, decimal, newVersion)
+          || listeners.isEmpty()) {
+        return;
+      }
+
+      RecordedValue recorded = new RecordedValue(value.getId(), newVersion, value.getValueTsMillis(),
+          value.getCalculateTsMillis(), decimal);
+      for (Consumer<RecordedValue> listener : listeners) {
+        try {
+          listener.accept(recorded);
+        } catch (RuntimeException e) {
+          log.warn("recent value listener failed. id: {}", value.getId(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * 값이 들어올 때마다 불린다. 값을 넣는 thread 에서 lock 을 잡은 채 부르므로 listener 는 짧아야 한다.
+   */
+  public void addListener(Consumer<RecordedValue> listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Consumer<RecordedValue> listener) {
+    listeners.remove(listener);
+  }
+
+  public long getCurrentVersion() {
+    return version.get();
+  }
+
+  /**
+   * spec 마다 ( afterVersion, uptoVersion ] 사이에 들어온 값 중 가장 최근 것 하나씩을 version 순서로 준다. 그 사이의 값들은 빠진다.
+   *
+   * @param ids   null 이면 전체 spec
+   * @param limit 최대 개수
+   * @return limit 개보다 많으면 null
+   */
+  public List<RecordedValue> latestSince(Collection<Integer> ids, long afterVersion, long uptoVersion, int limit) {
+    List<RecordedValue> values = new ArrayList<>();
+    for (int id : null == ids ? getIds() : ids) {
+      ValueRing ring = ringById.get(id);
+      RecordedValue value = null == ring ? null : ring.latestBetween(id, afterVersion, uptoVersion);
+      if (null == value) {
+        continue;
+      }
+      if (values.size() >= limit) {
+        return null;
+      }
+      values.add(value);
+    }
+    values.sort(Comparator.comparingLong(RecordedValue::getVersion));
+    return values;
+  }
+
+  /**
+   * ( afterVersion, uptoVersion ] 사이에 들어온 값을 모두 version 순서로 준다. 같은 회차를 다시 계산한 값은 마지막 것만 준다.
+   *
+   * @param ids   null 이면 전체 spec
+   * @param limit 최대 개수
+   * @return limit 개보다 많거나, 그 사이의 값이 ring 에서 밀려나서 빠짐없이 줄 수 없으면 null
+   */
+  public List<RecordedValue> allSince(Collection<Integer> ids, long afterVersion, long uptoVersion, int limit) {
+    List<RecordedValue> values = new ArrayList<>();
+    for (int id : null == ids ? getIds() : ids) {
+      ValueRing ring = ringById.get(id);
+      if (null != ring && !ring.collectBetween(id, afterVersion, uptoVersion, values, limit)) {
+        return null;
+      }
+    }
+    values.sort(Comparator.comparingLong(RecordedValue::getVersion));
+    return values;
+  }
+
+  public Set<Integer> getIds() {
+    return ringById.keySet();
+  }
+
+  /**
+   * @return 가장 최근 값. memory 에 없으면 null
+   */
+  public ImplValue getLatest(int id) {
+    ValueRing ring = ringById.get(id);
+    return null == ring ? null : ring.latest(id);
+  }
+
+  /**
+   * fromValueTsMillis 이후( 같은 시간 포함 ) 의 값들을 오래된 것부터 넘긴다. lock 을 잡은 채 호출하므로 consumer 는 짧아야 한다.
+   *
+   * @return memory 에 없으면 false
+   */
+  public boolean forEachRecent(int id, long fromValueTsMillis, PointConsumer consumer) {
+    ValueRing ring = ringById.get(id);
+    if (null == ring) {
+      return false;
+    }
+    ring.forEachFrom(fromValueTsMillis, consumer);
+    return true;
+  }
+
+  /**
+   * value 가 바로 앞 값 대비 maxChangeRatio 이내로 움직였는지 본다. 비교할 앞 값이 없으면 true
+   */
+  public boolean isWithinChange(int id, long valueTsMillis, BigDecimal value, double maxChangeRatio) {
+    ValueRing ring = ringById.get(id);
+    return null == ring || null == value || ring.isWithinChange(valueTsMillis, value, maxChangeRatio);
+  }
+
+  /**
+   * @return spec 의 값이 마지막으로 바뀐 시점의 version. memory 에 없으면 -1
+   */
+  public long getVersion(int id) {
+    ValueRing ring = ringById.get(id);
+    return null == ring ? -1L : ring.version;
+  }
+
+  /**
+   * 이 node 가 계산한 값이 마지막 값과 같아서 저장하지 않았을 때 부른다. 값은 그대로 두고 최신이라는 것만 남겨서,
+   * 값이 오래 바뀌지 않는 spec 도 조회할 때 DB 를 다시 보지 않게 한다.
+   */
+  public void markUnchanged(int id) {
+    ValueRing ring = ringById.get(id);
+    if (null != ring) {
+      ring.recordedMillis = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * @return spec 의 값이 마지막으로 들어왔거나 같은 값으로 확인된 시각. memory 에 없으면 0
+   */
+  public long getRecordedMillis(int id) {
+    ValueRing ring = ringById.get(id);
+    return null == ring ? 0L : ring.recordedMillis;
+  }
+
+  public int size(int id) {
+    ValueRing ring = ringById.get(id);
+    return null == ring ? 0 : ring.size();
+  }
+
+  /**
+   * 지워진 spec 의 값을 뺀다.
+   */
+  public void evict(Collection<Integer> ids) {
+    for (int id : ids) {
+      ringById.remove(id);
+    }
+  }
+
+  /**
+   * spec 의 numericMode 나 valueScale 이 바뀌면 기존 값들을 버리고 새로 쌓는다.
+   */
+  private ValueRing ringOf(ImplSpec spec) {
+    int scale = spec.isFixedPoint() ? FixedPoint.checkScale(spec.getValueScale()) : DECIMAL_SCALE;
+    return ringById.compute(spec.getId(), (id, ring) -> {
+      if (null != ring && ring.scale == scale) {
+        return ring;
+      }
+      Long droppedVersion = droppedVersionById.remove(id);
+      long evictedVersion = null != ring ? version.get() : null != droppedVersion ? droppedVersion : 0L;
+      return new ValueRing(pointsPerSpec, scale, evictedVersion);
+    });
+  }
+}
@@ -0,0 +1,118 @@
+package com.devtaco.distribute.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.devtaco.distribute.model.ImplSpec;
+
+import lombok.Getter;
+
+/**
+ * {@link ImplSpec} 의 in-memory cache. <p>
+ * 조회는 lock 없이 ConcurrentHashMap 에서 바로 읽고, 갱신은 {@link DataManager} 를 통해서만 한다. <p>
+ * 갱신될 때마다 cache 전체의 version 이 올라가고, 각 spec 은 자신이 들어온 시점의 version 을 가진다.
+ */
+public class SpecCache {
+
+  /** spec 과 그 spec 이 cache 에 들어온 시점의 version */
+  @Getter
+  public static class Entry {
+    private final ImplSpec spec;
+    private final long version;
+
+    Entry(ImplSpec spec, long version) {
+      this.spec = spec;
+      this.version = version;
+    }
+  }
+
+  private final ConcurrentHashMap<Integer, Entry> entryById = new ConcurrentHashMap<>();
+
+  /** 갱신될 때마다 1씩 증가 */
+  private final AtomicLong version = new AtomicLong();
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+
+  /**
+   * @return cache 에 없으면 null
+   */
+  public ImplSpec get(int id) {
+    Entry entry = entryById.get(id);
+    if (null == entry) {
+      missCount.increment();
+      return null;
+    }
+    hitCount.increment();
+    return entry.spec;
+  }
+
+  public Entry getEntry(int id) {
+    return entryById.get(id);
+  }
+
+  public List<ImplSpec> getAll() {
+    List<ImplSpec> specs = new ArrayList<>(entryById.size());
+    for (Entry entry : entryById.values()) {
+      specs.add(entry.spec);
+    }
+    return specs;
+  }
+
+  /**
+   * 전체를 새로 채운다. ( startup )
+   */
+  public synchronized void loadAll(Collection<ImplSpec> specs) {
+    entryById.clear();
+    putAll(specs);
+  }
+
+  public synchronized void putAll(Collection<ImplSpec> specs) {
+    long newVersion = version.incrementAndGet();
+    for (ImplSpec spec : specs) {
+      entryById.put(spec.getId(), new Entry(spec, newVersion));
+    }
+  }
+
+  /**
+   * cache 에 없는 spec 만 넣는다. cache miss 때 DB 에서 읽은 spec 은 그 사이 {@link #putAll(Collection)} 로 갱신된 것보다
+   * 오래되었을 수 있으므로, 이미 있는 것은 그대로 둔다.
+   *
+   * @return specs 순서대로, 결과적으로 cache 에 있는 spec 들
+   */
+  public synchronized List<ImplSpec> putAllIfAbsent(Collection<ImplSpec> specs) {
+    long newVersion = version.incrementAndGet();
+    List<ImplSpec> cached = new ArrayList<>(specs.size());
+    for (ImplSpec spec : specs) {
+      cached.add(entryById.computeIfAbsent(spec.getId(), id -> new Entry(spec, newVersion)).spec);
+    }
+    return cached;
+  }
+
+  public synchronized void removeAll(Collection<Integer> ids) {
+    version.incrementAndGet();
+    for (int id : ids) {
+      entryById.remove(id);
+    }
+  }
+
+  public long getVersion() {
+    return version.get();
+  }
+
+  public int size() {
+    return entryById.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+}
@@ -0,0 +1,13 @@
+package com.devtaco.distribute.repository;
+
+/**
+ * {@link DataManager#saveValueIfChanged} 의 결과
+ */
+public enum ValueWriteResult {
+  /** 새 값으로 저장됨 */
+  WRITTEN,
+  /** 마지막으로 저장한 값과 같아서( epsilon 이내 ) 저장하지 않음 */
+  UNCHANGED,
+  /** 저장 실패 */
+  FAILED;
+}
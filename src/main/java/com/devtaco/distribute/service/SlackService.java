@@ -1,9 +1,20 @@
 package com.devtaco.distribute.service;
 
+import static com.devtaco.distribute.util.HttpRequestUtils.requestAsync;
 import static com.devtaco.distribute.util.HttpRequestUtils.requestBy;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.stereotype.Service;
 
@@ -17,6 +28,7 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.FormBody;
 import okhttp3.Request;
 
 @Slf4j
@@ -24,17 +36,138 @@ import okhttp3.Request;
 public class SlackService {
 
   private static final String BEARER_STRING = "Bearer";
-  private static final String SLACK_CHAT_BASE_URL = "https://slack.com/api/chat.postMessage?";
+  private static final String SLACK_CHAT_BASE_URL = "https://slack.com/api/chat.postMessage";
   private static final String SLACK_BOT_PROVIDER = "slack";
 
+  /** slack message 한 건에 담을 최대 글자 수. 넘으면 나눠서 보낸다. */
+  private static final int MAX_FLUSH_MESSAGE_LENGTH = 3000;
+
   private static String slackBotToken;
   private static String slackChannelId;
   private static ObjectMapper mapper;
 
+  /** job thread 들이 넣고, alertSender 가 꺼내서 보내는 alert 대기열 */
+  private final BlockingQueue<String> alertQueue;
+
+  /** 대기열이 가득 차서 log 로만 남긴 alert 개수 */
+  private final AtomicLong droppedAlertCount = new AtomicLong();
+
+  private final long flushWindowNanos;
+
+  private Thread alertSender;
+
+  private volatile boolean running;
+
   public SlackService(SlackBotConfig slackConfig) {
     SlackService.slackBotToken = slackConfig.getToken();
     SlackService.slackChannelId = slackConfig.getChannel();
     SlackService.mapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+
+    this.alertQueue = new ArrayBlockingQueue<>(slackConfig.getQueueCapacity());
+    this.flushWindowNanos = TimeUnit.MILLISECONDS.toNanos(slackConfig.getFlushWindowMillis());
+  }
+
+  @PostConstruct
+  public void startAlertSender() {
+    this.running = true;
+    this.alertSender = new Thread(this::sendQueuedAlerts, "slack-alert-sender");
+    this.alertSender.setDaemon(true);
+    this.alertSender.start();
+  }
+
+  /**
+   * 종료 전에 대기열에 남은 alert 들을 보내고 끝낸다.
+   */
+  @PreDestroy
+  public void stopAlertSender() throws InterruptedException {
+    this.running = false;
+    this.alertSender.interrupt();
+    this.alertSender.join(TimeUnit.SECONDS.toMillis(5));
+
+    List<String> remains = new ArrayList<>();
+    alertQueue.drainTo(remains);
+    if (!remains.isEmpty()) {
+      flushAlerts(remains);
+    }
+  }
+
+  /**
+   * alert 을 대기열에 넣고 바로 return 한다. 전송은 background thread 가 한다. <p>
+   * 대기열이 가득 차 있으면 버리고 log 로만 남긴다. ( job thread 를 절대 막지 않는다 )
+   */
+  public void enqueueAlert(String message) {
+    if (!alertQueue.offer(message)) {
+      long dropped = droppedAlertCount.incrementAndGet();
+      log.warn("slack alert queue is full, spill to log ({} dropped) => {}", dropped, message);
+    }
+  }
+
+  public long getDroppedAlertCount() {
+    return droppedAlertCount.get();
+  }
+
+  /**
+   * 첫 alert 이 들어오면 flush window 동안 들어오는 alert 들을 모아서 한 번에 보낸다.
+   */
+  private void sendQueuedAlerts() {
+    while (running) {
+      // 꺼낸 alert 은 queue 에 없으므로, 중간에 깨워도 이 thread 가 보내야 한다.
+      List<String> batch = new ArrayList<>();
+      try {
+        batch.add(alertQueue.take());
+
+        long deadline = System.nanoTime() + flushWindowNanos;
+        long remainNanos;
+        while ((remainNanos = deadline - System.nanoTime()) > 0) {
+          String next = alertQueue.poll(remainNanos, TimeUnit.NANOSECONDS);
+          if (null == next) {
+            break;
+          }
+          batch.add(next);
+        }
+
+        flushAlerts(batch);
+      } catch (InterruptedException e) {
+        // stopAlertSender() 가 깨운 경우. 모으던 것은 여기서 보내고, 남은 것은 stopAlertSender() 가 보낸다.
+        if (!batch.isEmpty()) {
+          flushAlerts(batch);
+        }
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("slack alert sender occur Exception", e);
+      }
+    }
+  }
+
+  /**
+   * 같은 message 는 하나로 합쳐서 반복 횟수를 붙이고, 길이 제한에 맞춰 나눠서 보낸다.
+   */
+  private void flushAlerts(List<String> batch) {
+    Map<String, Integer> repeatCountByMessage = new LinkedHashMap<>();
+    for (String message : batch) {
+      repeatCountByMessage.merge(message, 1, Integer::sum);
+    }
+
+    StringBuilder merged = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : repeatCountByMessage.entrySet()) {
+      String line = entry.getValue() > 1
+          ? entry.getKey() + " (x" + entry.getValue() + ")"
+          : entry.getKey();
+
+      if (merged.length() > 0 && merged.length() + line.length() + 1 > MAX_FLUSH_MESSAGE_LENGTH) {
+        sendAlert(merged.toString());
+        merged.setLength(0);
+      }
+      if (merged.length() > 0) {
+        merged.append('\n');
+      }
+      merged.append(line);
+    }
+
+    if (merged.length() > 0) {
+      sendAlert(merged.toString());
+    }
   }
 
   @Getter
@@ -60,22 +193,42 @@ public class SlackService {
   }
 
   public boolean sendAlert(String message) {
-    String urlStr = SLACK_CHAT_BASE_URL;
-    urlStr += "channel=" + slackChannelId; // channel id
-    try {
-      urlStr += "&blocks=" + URLEncoder.encode(message, "UTF-8");
-    } catch (UnsupportedEncodingException e) {
-      log.error("Slack Message Encode fail", e);
-    }
+    String slackSendResult = requestBy(createAlertRequest(message), SLACK_BOT_PROVIDER);
+    return isSendSucceeded(slackSendResult);
+  }
+
+  /**
+   * {@link #sendAlert(String)} 의 non-blocking 버전. rate limit 대기와 전송을 호출 thread 에서 하지 않는다.
+   * @return 전송 성공 여부로 완료되는 future
+   */
+  public CompletableFuture<Boolean> sendAlertAsync(String message) {
+    return requestAsync(createAlertRequest(message), SLACK_BOT_PROVIDER)
+        .thenApply(this::isSendSucceeded);
+  }
+
+  /**
+   * form body 로 POST 한다. message 가 url 에 남지 않고, response cache 에도 들어가지 않는다.
+   */
+  private Request createAlertRequest(String message) {
+    FormBody body = new FormBody.Builder()
+        .add("channel", slackChannelId) // channel id
+        .add("blocks", message)
+        .build();
 
     Request req = new Request.Builder()
-        .get()
-        .addHeader("Content-Type", "application/x-www-form-urlencoded")
+        .post(body)
         .addHeader("Authorization", getBeaerToken())
-        .url(urlStr)
+        .url(SLACK_CHAT_BASE_URL)
         .build();
 
-    String slackSendResult = requestBy(req, SLACK_BOT_PROVIDER);
+    return req;
+  }
+
+  private boolean isSendSucceeded(String slackSendResult) {
+    if (null == slackSendResult) {
+      return false;
+    }
+
     JsonNode resultNode = createReulstNode(slackSendResult);
     if (null == resultNode) {
       return false;
@@ -0,0 +1,141 @@
+package com.devtaco.distribute.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.devtaco.distribute.service.SpecUpdateListener.Operation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 짧은 시간 안에 들어온 spec 변경 알림들을 id 별로 모아서, 최종적으로 필요한 작업 하나로 줄인다. <p>
+ * 예) INSERT -> UPDATE 는 INSERT, UPDATE -> DELETE 는 DELETE, INSERT -> DELETE 는 아무것도 안함. <p>
+ * 마지막 알림 이후 quiet window 동안 조용하거나, 첫 알림 이후 max window 가 지나면 flush 한다. <p>
+ * {@link SpecUpdateListener} 의 listener thread 에서만 사용하므로 thread safe 하지 않다.
+ */
+public class SpecChangeAggregator {
+
+  private final long quietWindowNanos;
+  private final long maxWindowNanos;
+
+  /** id -> 지금까지의 최종 작업. 들어온 순서를 유지한다. */
+  private LinkedHashMap<Integer, Operation> pending = new LinkedHashMap<>();
+
+  private long firstPendingNanos;
+  private long lastPendingNanos;
+
+  public SpecChangeAggregator(long quietWindowMillis, long maxWindowMillis) {
+    this.quietWindowNanos = TimeUnit.MILLISECONDS.toNanos(quietWindowMillis);
+    this.maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(maxWindowMillis);
+  }
+
+  /**
+   * NOTIFY payload ( {"id": 1, "operation": "UPDATE"} ) 를 파싱해서 모은다.
+   *
+   * @throws JsonProcessingException    json 이 아닌 경우
+   * @throws NullPointerException       id / operation 이 없는 경우
+   * @throws IllegalArgumentException   정의되지 않은 operation 인 경우
+   */
+  public void addPayload(ObjectMapper mapper, String payload) throws JsonProcessingException {
+    JsonNode updatedInfo = mapper.readTree(payload);
+
+    int id = updatedInfo.get("id").asInt();
+    String opStr = updatedInfo.get("operation").asText();
+
+    add(id, Operation.valueOf(opStr));
+  }
+
+  public void add(int id, Operation op) {
+    long now = System.nanoTime();
+    if (pending.isEmpty()) {
+      firstPendingNanos = now;
+    }
+    lastPendingNanos = now;
+
+    Operation merged = merge(pending.get(id), op);
+    if (null == merged) {
+      pending.remove(id);
+    } else {
+      pending.put(id, merged);
+    }
+  }
+
+  public boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+  /**
+   * @return flush 까지 남은 시간(ms). 0 이면 지금 flush 해야 한다. 모인 것이 없으면 -1
+   */
+  public long millisUntilFlush() {
+    if (pending.isEmpty()) {
+      return -1L;
+    }
+    long now = System.nanoTime();
+    long flushAt = Math.min(lastPendingNanos + quietWindowNanos, firstPendingNanos + maxWindowNanos);
+    return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(flushAt - now));
+  }
+
+  /**
+   * 모인 변경분을 꺼내고 비운다.
+   */
+  public Map<Integer, Operation> drain() {
+    Map<Integer, Operation> drained = pending;
+    pending = new LinkedHashMap<>();
+    return drained;
+  }
+
+  /**
+   * 적용하다 실패한 변경분을 다시 모은다. 그 사이 새로 들어온 변경분은 그 뒤에 합친다. <p>
+   * 일부는 이미 적용되었을 수 있으므로 INSERT 는 UPDATE 로 되돌린다. ( 내렸다가 다시 올리므로 어느 쪽이든 맞다 ) <p>
+   * 바로 다시 실패하지 않도록 quiet window 뒤에 다시 flush 한다.
+   */
+  public void restore(Map<Integer, Operation> failed) {
+    LinkedHashMap<Integer, Operation> restored = new LinkedHashMap<>();
+    for (Map.Entry<Integer, Operation> change : failed.entrySet()) {
+      Operation op = change.getValue();
+      restored.put(change.getKey(), Operation.INSERT == op ? Operation.UPDATE : op);
+    }
+    for (Map.Entry<Integer, Operation> change : pending.entrySet()) {
+      Operation merged = merge(restored.get(change.getKey()), change.getValue());
+      if (null == merged) {
+        restored.remove(change.getKey());
+      } else {
+        restored.put(change.getKey(), merged);
+      }
+    }
+    pending = restored;
+
+    if (!pending.isEmpty()) {
+      long now = System.nanoTime();
+      firstPendingNanos = now;
+      lastPendingNanos = now;
+    }
+  }
+
+  /**
+   * 같은 id 에 대한 이전 작업과 새 작업을 합친다.
+   *
+   * @return 합친 작업. 결과적으로 할 일이 없으면 null
+   */
+  static Operation merge(Operation prev, Operation next) {
+    if (null == prev) {
+      return next;
+    }
+
+    switch (prev) {
+      case INSERT:
+        // 새로 생긴 spec 은 아직 job 이 없다. 지워지면 할 일이 없고, 수정되면 최종 spec 으로 등록만 하면 된다.
+        return Operation.DELETE == next ? null : Operation.INSERT;
+      case UPDATE:
+        return Operation.DELETE == next ? Operation.DELETE : Operation.UPDATE;
+      case DELETE:
+        // 지워졌다가 다시 생긴 경우, 기존 job 을 내리고 다시 올려야 한다.
+        return Operation.DELETE == next ? Operation.DELETE : Operation.UPDATE;
+      default:
+        return next;
+    }
+  }
+}
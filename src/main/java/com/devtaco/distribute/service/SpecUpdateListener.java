@@ -1,25 +1,30 @@
 package com.devtaco.distribute.service;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.postgresql.PGConnection;
 import org.postgresql.PGNotification;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.stereotype.Component;
 
-import com.devtaco.distribute.config.ThreadPoolConfig;
 import com.devtaco.distribute.job.JobRegistration;
+import com.devtaco.distribute.model.ImplSpec;
 import com.devtaco.distribute.model.JobSpec;
 import com.devtaco.distribute.repository.DataManager;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +37,9 @@ import lombok.extern.slf4j.Slf4j;
  * 2. 테이블의 INSERT/UPDATE/DELETE 이벤트 발생 시 알림 수신
  * 3. 수신된 이벤트에 따라 작업(Job)을 등록/수정/삭제
  * 
+ * 알림은 전용 thread 가 전용 connection( connection pool 밖 )에서 blocking 으로 기다린다.
+ * connection 이 끊어지면 다시 연결하고 LISTEN 을 다시 건다.
+ * 
  * @see JobRegistration
  * @see DataManager
  */
@@ -42,6 +50,19 @@ public class SpecUpdateListener {
     /** 데이터베이스 변경 이벤트를 수신할 채널명 */
     private static final String LISTEN_SPEC_UPDATE_CHANNEL = "watch__spec_update";
 
+    /** getNotifications 한 번에 기다리는 최대 시간. 이 주기로 종료 여부와 connection 상태를 확인한다. */
+    private static final int LISTEN_TIMEOUT_MILLIS = 10_000;
+
+    /** 재연결 대기 시간 ( 실패할 때마다 2배, 최대값까지 ) */
+    private static final long MIN_RECONNECT_BACKOFF_MILLIS = 500L;
+    private static final long MAX_RECONNECT_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /** 마지막 알림 이후 이 시간 동안 조용하면 모아둔 변경분을 적용한다. */
+    private static final long CHANGE_QUIET_WINDOW_MILLIS = 200L;
+
+    /** 알림이 계속 들어와도 첫 알림 이후 이 시간이 지나면 적용한다. */
+    private static final long CHANGE_MAX_WINDOW_MILLIS = 2_000L;
+
     /**
      * 데이터베이스 작업 유형을 정의하는 열거형
      */
@@ -68,11 +89,20 @@ public class SpecUpdateListener {
     private DataManager dataMgr;
     
     /** PostgreSQL 연결 및 알림 수신을 위한 객체들 */
-    private JdbcTemplate jdbcTemplate;
+    private DataSourceProperties dataSourceProperties;
+    private Connection listenConn;
     private PGConnection pgconn;
 
-    /** 데이터베이스 변경 감지를 위한 스케줄러 */
-    private ThreadPoolTaskScheduler scheduler = ThreadPoolConfig.getInstance().getScheduledThreadPool();
+    /** payload 파싱용. listener thread 에서만 사용한다. */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** 짧은 시간 동안의 변경 알림을 id 별로 모아둔다. */
+    private final SpecChangeAggregator changeAggregator =
+            new SpecChangeAggregator(CHANGE_QUIET_WINDOW_MILLIS, CHANGE_MAX_WINDOW_MILLIS);
+
+    /** 알림을 기다리는 전용 thread */
+    private Thread listenerThread;
+    private volatile boolean running;
 
     /** 알림 발송을 위한 서비스 */
     private SlackService slackBot;
@@ -80,150 +110,270 @@ public class SpecUpdateListener {
     /**
      * 리스너를 초기화하고 데이터베이스 감시를 시작합니다.
      * 
-     * @param jdbcTemplate JDBC 템플릿
+     * @param dataSourceProperties LISTEN 전용 connection 을 만들 datasource 설정
      * @param dataMgr 데이터 관리자
      * @param jobRegister 작업 등록기
      * @param slackBot 슬랙 알림 서비스
      */
-    public SpecUpdateListener(JdbcTemplate jdbcTemplate, DataManager dataMgr, 
+    public SpecUpdateListener(DataSourceProperties dataSourceProperties, DataManager dataMgr, 
             JobRegistration jobRegister, SlackService slackBot) {
         this.dataMgr = dataMgr;
         this.jobRegister = jobRegister;
         this.slackBot = slackBot;
-        this.jdbcTemplate = jdbcTemplate;
-        listenSpecTable();
+        this.dataSourceProperties = dataSourceProperties;
     }
 
     /**
-     * PostgreSQL LISTEN 명령을 실행하여 테이블 변경 감지를 시작합니다.
+     * LISTEN 전용 connection 을 만들고 PostgreSQL LISTEN 명령을 실행하여 테이블 변경 감지를 시작합니다.
+     * pool 의 connection 을 계속 붙잡지 않도록 DriverManager 로 직접 연결합니다.
      * 
      * @throws SQLException 데이터베이스 연결 또는 LISTEN 명령 실행 실패 시
      */
-    public void listenSpecTable() { 
-        try {
-            Connection conn = jdbcTemplate.getDataSource().getConnection();
-            Statement stmt = conn.createStatement();
-            this.pgconn = conn.unwrap(PGConnection.class);
+    public void listenSpecTable() throws SQLException { 
+        Properties props = new Properties();
+        props.setProperty("user", dataSourceProperties.determineUsername());
+        // 비밀번호 없이 접속하는 설정이면 null 이다. ( Properties 는 null 을 받지 않는다 )
+        String password = dataSourceProperties.determinePassword();
+        if (null != password) {
+            props.setProperty("password", password);
+        }
+        props.setProperty("tcpKeepAlive", "true");
+
+        this.listenConn = DriverManager.getConnection(dataSourceProperties.determineUrl(), props);
+        this.pgconn = listenConn.unwrap(PGConnection.class);
+
+        try (Statement stmt = listenConn.createStatement()) {
             stmt.execute("LISTEN " + LISTEN_SPEC_UPDATE_CHANNEL );
-            stmt.close();
-        } catch (SQLException e) {
-            log.error("SpecUpdateListener fail to liseten spec_table", e);
-        } 
+        }
     }
 
     /**
-     * 변경 감지 스케줄러를 초기화하고 시작합니다.
+     * 변경 감지 thread 를 시작합니다.
      * UTC 시간대를 기준으로 동작합니다.
      */
     @PostConstruct
     public void start() {
         TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
-        TimeZone tz = TimeZone.getDefault();
-        CronTrigger cronTrigger = new CronTrigger("cron_expression", tz);
-        this.scheduler.schedule( scheduledListen(), cronTrigger);
+
+        this.running = true;
+        this.listenerThread = new Thread(this::listenLoop, "spec-update-listener");
+        this.listenerThread.setDaemon(true);
+        this.listenerThread.start();
     }
 
     /**
-     * 데이터베이스 변경 이벤트를 처리하는 메인 로직입니다.
-     * 
-     * 처리 흐름:
-     * 1. PostgreSQL 알림 수신
-     * 2. 알림 내용(payload) 파싱
-     * 3. 작업 유형에 따른 처리:
-     *    - INSERT: 새 작업 등록
-     *    - UPDATE: 기존 작업 제거 후 재등록
-     *    - DELETE: 작업 제거
-     * 
-     * @throws SQLException PostgreSQL 알림 수신 실패 시
-     * @throws JsonProcessingException JSON 파싱 실패 시
-     * @throws NullPointerException 필수 데이터 누락 시
+     * 변경 감지 thread 를 멈춥니다. blocking 중인 getNotifications 는 connection 을 닫아서 깨웁니다.
      */
-    public Runnable scheduledListen() {
-        return() -> {
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        this.running = false;
+        closeListenConnection();
+        this.listenerThread.interrupt();
+        this.listenerThread.join(LISTEN_TIMEOUT_MILLIS);
+    }
 
-            String payload = "";
-            JsonNode updatedInfo = null;
+    /**
+     * 알림이 올 때까지 blocking 으로 기다리고, 오면 모아둡니다.
+     * 모아둔 것이 있으면 flush 시점까지만 기다렸다가 한 번에 적용합니다.
+     * connection 에 문제가 생기면 backoff 후 다시 연결하고 LISTEN 을 다시 겁니다.
+     */
+    private void listenLoop() {
+        long reconnectBackoffMillis = MIN_RECONNECT_BACKOFF_MILLIS;
+        boolean reconnecting = false;
 
+        while (running) {
             try {
+                if (null == listenConn || listenConn.isClosed()) {
+                    listenSpecTable();
+                    reconnectBackoffMillis = MIN_RECONNECT_BACKOFF_MILLIS;
+                    if (reconnecting) {
+                        // 끊겨있던 동안의 알림은 받지 못했을 수 있다.
+                        String msg = "SpecUpdateListener reconnected. spec changes during disconnection may be missed";
+                        log.warn(msg);
+                        slackBot.enqueueAlert(msg);
+                    }
+                    reconnecting = false;
+                }
 
-                // db 로 부터 noti가 여러개 올 수 있다. (array)
-                PGNotification[] notifications = pgconn.getNotifications();
+                // getNotifications(0) 은 무한 대기이므로, flush 시점이 되었으면 기다리지 않고 바로 적용한다.
+                long waitMillis = LISTEN_TIMEOUT_MILLIS;
+                long untilFlushMillis = changeAggregator.millisUntilFlush();
+                if (0 == untilFlushMillis) {
+                    flushSpecChanges();
+                    continue;
+                }
+                if (untilFlushMillis > 0) {
+                    waitMillis = Math.min(waitMillis, untilFlushMillis);
+                }
 
-                if ( notifications == null ) {
+                // 알림이 오면 바로 return, 없으면 timeout 후 빈 배열 / null
+                PGNotification[] notifications = pgconn.getNotifications((int) waitMillis);
+                if (null == notifications || 0 == notifications.length) {
+                    if (changeAggregator.isEmpty()) {
+                        checkListenConnection();
+                    }
+                    continue;
+                }
+
+                collectNotifications(notifications);
+
+            } catch (SQLException sqlException) {
+                if (!running) {
                     return;
                 }
+                String errMsg = "SpecUpdateListener can not listen event";
+                log.error(errMsg, sqlException);
+                slackBot.enqueueAlert(errMsg);
+
+                closeListenConnection();
+                reconnecting = true;
+                try {
+                    Thread.sleep(reconnectBackoffMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                reconnectBackoffMillis = Math.min(reconnectBackoffMillis * 2, MAX_RECONNECT_BACKOFF_MILLIS);
+            } catch (RuntimeException applyException) {
+                // job 등록/해제 중 실패해도 listener thread 는 계속 살아있어야 한다.
+                String errMsg = "SpecUpdateListener fail to apply spec changes";
+                log.error(errMsg, applyException);
+                slackBot.enqueueAlert(errMsg);
+            }
+        }
+    }
 
-                // update 되는 row 가 그렇게 자주 있지는 않다. 요청이 있을 때만 mapper 만들자
-                ObjectMapper mapper = new ObjectMapper();
+    /**
+     * 알림이 없는 동안에도 connection 이 살아있는지 확인합니다. 죽어있으면 SQLException 으로 재연결하게 됩니다.
+     */
+    private void checkListenConnection() throws SQLException {
+        try (Statement stmt = listenConn.createStatement()) {
+            stmt.execute("SELECT 1");
+        }
+    }
 
-                // row 개수만큼 반복
-                for (int i=0; i<notifications.length; i++) {
+    private void closeListenConnection() {
+        Connection conn = this.listenConn;
+        if (null == conn) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.warn("SpecUpdateListener fail to close listen connection", e);
+        }
+    }
 
-                    // db 의 수정분을 string 으로 받는다. 
-                    // operation 과 id 만 받는다.
-                    payload = notifications[i].getParameter();
+    /**
+     * 데이터베이스 변경 이벤트를 모으는 로직입니다.
+     * 
+     * 처리 흐름:
+     * 1. PostgreSQL 알림 수신
+     * 2. 알림 내용(payload) 파싱
+     * 3. id 별로 {@link SpecChangeAggregator} 에 모은다. ( 실제 적용은 {@link #flushSpecChanges()} )
+     * 
+     * 알림 하나의 payload 가 잘못되어도 나머지 알림은 계속 처리한다.
+     * 
+     * @param notifications 한 번에 수신된 알림들 (db 로 부터 noti가 여러개 올 수 있다)
+     */
+    private void collectNotifications(PGNotification[] notifications) {
 
-                    log.info("db update payload -> {}", payload);
-                    
-                    updatedInfo = mapper.readTree(payload);
+        // row 개수만큼 반복
+        for (PGNotification notification : notifications) {
 
-                    int id = updatedInfo.get("id").asInt();
-                    String opStr = updatedInfo.get("operation").asText();
-                    Operation op = Operation.valueOf(opStr);
+            // db 의 수정분을 string 으로 받는다. 
+            // operation 과 id 만 받는다.
+            String payload = notification.getParameter();
 
-                    applyChangeToJob(id, op.getAsInt());
+            log.info("db update payload -> {}", payload);
 
-                    log.info("updatedInfo => {}", updatedInfo.toString());
-                    slackBot.sendAlert("new spec updated " + updatedInfo.toString());
-                }
-                // spec 을 update 했는데, 오류가 나면 알림을 줘야한다. 안그러면 모름.
-            } catch (SQLException sqlException) {
-                String errMsg = "SpecUpdateListener can not listen event";
-                log.error(errMsg, sqlException);
-                slackBot.sendAlert(errMsg);
+            try {
+                changeAggregator.addPayload(mapper, payload);
+
+            // spec 을 update 했는데, 오류가 나면 알림을 줘야한다. 안그러면 모름.
             } catch (JsonProcessingException jsonExeption) {
                 String errMsg = "SpecUpdateListener can not convert to payload => " + payload;
                 log.error(errMsg, jsonExeption);
-                slackBot.sendAlert(errMsg);
-            } catch (NullPointerException nullException) {
-                String errMsg ="";
-                if ( !updatedInfo.isEmpty()) {
-                    errMsg = "SpecUpdateListener can not get spec info from => " + updatedInfo.toString();
-                }
-                errMsg = "SpecUpdateListeener can not get spec info from null jsonNode";
-                log.error(errMsg, nullException);
-                slackBot.sendAlert( errMsg );
+                slackBot.enqueueAlert(errMsg);
+            } catch (NullPointerException | IllegalArgumentException invalidException) {
+                String errMsg = "SpecUpdateListener can not get spec info from => " + payload;
+                log.error(errMsg, invalidException);
+                slackBot.enqueueAlert( errMsg );
             }
-        };
+        }
     }
 
     /**
-     * 데이터베이스 변경사항을 작업 시스템에 적용합니다.
+     * 모아둔 변경사항을 작업 시스템에 한 번에 적용합니다.
+     * 
+     * 1. INSERT / UPDATE 된 spec 들을 한 번의 query 로 가져와 spec cache 를 갱신한다.
+     * 2. 작업 유형에 따른 처리:
+     *    - INSERT: 새 작업 등록
+     *    - UPDATE: 바뀐 설정만 실행 중인 작업에 반영 ( 제자리에서 바꿀 수 없으면 제거 후 재등록 )
+     *    - DELETE: 작업 제거
+     *    DB 에서 찾을 수 없는 spec 은 그 사이 지워진 것이므로 제거한다.
      * 
-     * @param id 작업 식별자
-     * @param opProperty 작업 유형 (1:등록, 2:수정, 3:삭제)
+     * 적용하다 실패하면 변경분을 aggregator 에 되돌려서 다음 flush 때 다시 적용한다.
      */
-    private void applyChangeToJob(int id, int opProperty) {
-
-        JobSpec spec = null;
-
-        spec = dataMgr.getSpec(id);
-        
-        switch ( opProperty ) {
-            case 1:  // first regist
-                jobRegister.registJob( spec );
-                break;
-            case 2:  // re-regist
-                jobRegister.dereigstJob( spec );
-                jobRegister.registJob( spec );
-                break;
-            case 3: // de-regist
-                jobRegister.dereigstJob( spec );
-                break;
-            default:
-                log.info("op is not defined");
-                break;
+    private void flushSpecChanges() {
+        Map<Integer, Operation> changes = changeAggregator.drain();
+        try {
+            applySpecChanges(changes);
+        } catch (RuntimeException e) {
+            changeAggregator.restore(changes);
+            throw e;
+        }
+    }
+
+    private void applySpecChanges(Map<Integer, Operation> changes) {
+
+        List<Integer> fetchIds = new ArrayList<>();
+        for (Map.Entry<Integer, Operation> change : changes.entrySet()) {
+            if (Operation.DELETE != change.getValue()) {
+                fetchIds.add(change.getKey());
+            }
+        }
+
+        // cache 를 갱신하면 이름이 바뀐 spec 의 이전 job 이름을 알 수 없으므로 먼저 기억해둔다.
+        Map<Integer, String> previousValueNames = new HashMap<>();
+        for (int id : changes.keySet()) {
+            ImplSpec previous = dataMgr.getSpecCache().get(id);
+            if (null != previous) {
+                previousValueNames.put(id, previous.getJobName());
+            }
         }
+
+        Map<Integer, ImplSpec> specById = new HashMap<>();
+        for (ImplSpec spec : dataMgr.refreshSpecs(fetchIds)) {
+            specById.put(spec.getId(), spec);
+        }
+
+        List<JobSpec> registSpecs = new ArrayList<>();
+        List<JobSpec> reregistSpecs = new ArrayList<>();
+        List<Integer> deregistIds = new ArrayList<>();
+
+        for (Map.Entry<Integer, Operation> change : changes.entrySet()) {
+            int id = change.getKey();
+            ImplSpec spec = specById.get(id);
+
+            if (Operation.DELETE == change.getValue() || null == spec) {
+                deregistIds.add(id);
+            } else if (Operation.INSERT == change.getValue()) {
+                registSpecs.add(spec);
+            } else {
+                reregistSpecs.add(spec);
+            }
+        }
+
+        jobRegister.applySpecChanges(registSpecs, reregistSpecs, deregistIds, previousValueNames);
+
+        // job 을 내릴 때까지는 이전 spec 정보가 필요하므로, 내린 다음에 cache 에서 뺀다.
+        dataMgr.evictSpecs(deregistIds);
+
+        String msg = String.format("spec changes applied. insert: %d, update: %d, delete: %d",
+                registSpecs.size(), reregistSpecs.size(), deregistIds.size());
+        log.info("{} => {}", msg, changes);
+        slackBot.enqueueAlert(msg);
     }
 
 }
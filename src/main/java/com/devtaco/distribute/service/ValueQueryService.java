@@ -0,0 +1,221 @@
+package com.devtaco.distribute.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.devtaco.distribute.config.ValueQueryConfig;
+import com.devtaco.distribute.controller.ValueHistoryResponse;
+import com.devtaco.distribute.controller.ValueResponse;
+import com.devtaco.distribute.model.ImplValue;
+import com.devtaco.distribute.repository.DataManager;
+import com.devtaco.distribute.repository.RecentValueStore;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 조회 API 가 읽는 계산 값. DB 가 아니라 {@link RecentValueStore} 에서 읽는다. <p>
+ * 최신 값 응답은 store 의 version 과 같이 들고 있다가, 값이 저장되어 version 이 바뀌면 다시 만든다. <p>
+ * ETag 는 최신 값의 ( id, valueTs, calculateTs ) 로 만든다. 어느 node 에 물어도, 재시작한 뒤에도 같은 값이면 같은 ETag 가 나온다. <p>
+ *
+ * store 에는 이 node 가 저장한 값만 바로 들어온다. dbRefreshMillis 동안 새 값이 들어오지 않은 spec 은
+ * 조회할 때 DB 를 다시 확인한다. ( spec 하나에 그 간격마다 최대 한 번. DB 에 값이 없던 spec 도 마찬가지 )
+ * 이 node 가 계산하는 spec 은 값이 같아서 저장을 건너뛰어도 계산할 때마다 확인 시각을 남기므로
+ * ( {@link RecentValueStore#markUnchanged(int)} ), cron 간격이 dbRefreshMillis 보다 짧으면 DB 를 보지 않는다.
+ */
+@Slf4j
+@Service
+public class ValueQueryService {
+
+  /** 여러 spec 을 다시 확인할 때 한 번의 query 로 읽는 spec 수 */
+  private static final int REFRESH_BATCH_SIZE = 500;
+
+  /** 만든 응답과, 만들 때의 store version */
+  private static class CachedResponse {
+    private final long version;
+    private final ValueResponse response;
+
+    CachedResponse(long version, ValueResponse response) {
+      this.version = version;
+      this.response = response;
+    }
+  }
+
+  private final DataManager dataManager;
+  private final RecentValueStore recentValueStore;
+
+  private final long dbRefreshMillis;
+
+  private final ConcurrentHashMap<Integer, CachedResponse> latestById = new ConcurrentHashMap<>();
+
+  /** id -> 마지막으로 DB 를 확인한 시각. 값이 없었던 경우도 남겨서, 그 사이의 조회는 DB 를 보지 않는다. */
+  private final ConcurrentHashMap<Integer, Long> dbCheckedMillisById = new ConcurrentHashMap<>();
+
+  public ValueQueryService(DataManager dataManager, ValueQueryConfig config) {
+    this.dataManager = dataManager;
+    this.recentValueStore = dataManager.getRecentValueStore();
+    this.dbRefreshMillis = config.getDbRefreshMillis();
+  }
+
+  /**
+   * 필요하면 DB 를 다시 확인한 뒤의 version 을 준다. 없는 spec 은 DB 를 보지 않는다.
+   *
+   * @return 값이 없으면 -1
+   */
+  public long getVersion(int id) {
+    refreshIfDue(id);
+    return recentValueStore.getVersion(id);
+  }
+
+  /**
+   * dbRefreshMillis 동안 store 에 새 값이 들어오지 않았고, 그 동안 DB 를 확인하지도 않았으면 DB 에서 최신 값을 읽어 store 에 넣는다.
+   */
+  private void refreshIfDue(int id) {
+    if (!claimRefresh(id, System.currentTimeMillis())) {
+      return;
+    }
+
+    try {
+      dataManager.loadLatestValue(id);
+    } catch (RuntimeException e) {
+      log.warn("fail to refresh latest value. id: {}", id, e);
+    }
+  }
+
+  /**
+   * {@link #refreshIfDue(int)} 를 여러 spec 에 대해 한다. 확인할 때가 된 spec 들만 묶어서 한 번의 query 로 읽는다. <p>
+   * 조회가 없어도 다른 node 가 저장한 값이 store 에 들어오도록, stream 이 구독 중인 spec 들에 대해 주기적으로 부른다.
+   */
+  public void refreshIfDue(Collection<Integer> ids) {
+    long now = System.currentTimeMillis();
+    List<Integer> dueIds = new ArrayList<>();
+    for (int id : ids) {
+      if (claimRefresh(id, now)) {
+        dueIds.add(id);
+      }
+    }
+    for (int from = 0; from < dueIds.size(); from += REFRESH_BATCH_SIZE) {
+      List<Integer> chunk = dueIds.subList(from, Math.min(from + REFRESH_BATCH_SIZE, dueIds.size()));
+      try {
+        dataManager.loadLatestValues(chunk);
+      } catch (RuntimeException e) {
+        log.warn("fail to refresh latest values of {} specs", chunk.size(), e);
+      }
+    }
+  }
+
+  public long getDbRefreshMillis() {
+    return dbRefreshMillis;
+  }
+
+  /**
+   * 같은 spec 을 여러 thread 가 동시에 조회해도 한 thread 만 DB 를 읽도록, 확인할 시각을 먼저 남긴다. 없는 spec 은 DB 를 보지 않는다.
+   *
+   * @return 이 thread 가 DB 를 확인해야 하면 true
+   */
+  private boolean claimRefresh(int id, long now) {
+    if (null == dataManager.getSpecCache().get(id)) {
+      return false;
+    }
+    if (now - recentValueStore.getRecordedMillis(id) < dbRefreshMillis) {
+      return false;
+    }
+
+    Long checkedMillis = dbCheckedMillisById.get(id);
+    if (null != checkedMillis && now - checkedMillis < dbRefreshMillis) {
+      return false;
+    }
+    return null == checkedMillis
+        ? null == dbCheckedMillisById.putIfAbsent(id, now)
+        : dbCheckedMillisById.replace(id, checkedMillis, now);
+  }
+
+  /**
+   * @return 값이 없으면 null
+   */
+  public ValueResponse getLatest(int id) {
+    // version 을 먼저 읽는다. 그 사이에 값이 바뀌면 더 오래된 version 으로 cache 되어 다음 조회 때 다시 만든다.
+    long version = getVersion(id);
+    if (version < 0) {
+      latestById.remove(id);
+      return null;
+    }
+
+    CachedResponse cached = latestById.get(id);
+    if (null != cached && cached.version == version) {
+      return cached.response;
+    }
+
+    ImplValue latest = recentValueStore.getLatest(id);
+    if (null == latest) {
+      return null;
+    }
+    ValueResponse response = ValueResponse.of(dataManager.getValueName(id), latest);
+    latestById.put(id, new CachedResponse(version, response));
+    return response;
+  }
+
+  /**
+   * @return 값이 없는 id 는 빠진다.
+   */
+  public List<ValueResponse> getLatest(Collection<Integer> ids) {
+    // 확인할 때가 된 spec 들을 먼저 한 번에 읽는다. 아래의 spec 별 확인은 이미 확인했으므로 DB 를 보지 않는다.
+    refreshIfDue(ids);
+
+    List<ValueResponse> responses = new ArrayList<>(ids.size());
+    for (int id : ids) {
+      ValueResponse response = getLatest(id);
+      if (null != response) {
+        responses.add(response);
+      }
+    }
+    return responses;
+  }
+
+  /**
+   * memory 에 있는 최근 값들 중 fromValueTsMillis 이후의 것들.
+   *
+   * @return 값이 없으면 null
+   */
+  public ValueHistoryResponse getHistory(int id, long fromValueTsMillis) {
+    List<ValueHistoryResponse.Point> points = new ArrayList<>(recentValueStore.size(id));
+    boolean found = recentValueStore.forEachRecent(id, fromValueTsMillis,
+        (valueTsMillis, calculateTsMillis, value) -> points.add(new ValueHistoryResponse.Point(value, valueTsMillis, calculateTsMillis)));
+    if (!found) {
+      return null;
+    }
+    return new ValueHistoryResponse(id, dataManager.getValueName(id), points);
+  }
+
+  /**
+   * @return 값이 없으면 null
+   */
+  public String etagOf(int id) {
+    refreshIfDue(id);
+    ImplValue latest = recentValueStore.getLatest(id);
+    if (null == latest) {
+      return null;
+    }
+    return '"' + Integer.toString(id) + '-' + Long.toHexString(latest.getValueTsMillis())
+        + '-' + Long.toHexString(latest.getCalculateTsMillis()) + '"';
+  }
+
+  /**
+   * 여러 id 의 ETag. 하나라도 바뀌면 바뀐다.
+   */
+  public String etagOf(Collection<Integer> ids) {
+    refreshIfDue(ids);
+
+    long hash = 1125899906842597L;
+    for (int id : ids) {
+      ImplValue latest = recentValueStore.getLatest(id);
+      hash = 31 * hash + id;
+      hash = 31 * hash + (null == latest ? -1L : latest.getValueTsMillis());
+      hash = 31 * hash + (null == latest ? -1L : latest.getCalculateTsMillis());
+    }
+    return "\"m-" + Long.toHexString(hash) + '"';
+  }
+}
@@ -0,0 +1,401 @@
+package com.devtaco.distribute.service;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.devtaco.distribute.config.ValueStreamConfig;
+import com.devtaco.distribute.controller.ValueResponse;
+import com.devtaco.distribute.model.ImplSpec;
+import com.devtaco.distribute.repository.DataManager;
+import com.devtaco.distribute.repository.RecentValueStore;
+import com.devtaco.distribute.repository.RecentValueStore.RecordedValue;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 새로 저장된 값을 SSE 로 구독자들에게 보낸다. <p>
+ * 값은 {@link RecentValueStore} 에 들어가는 순간( DB commit 직후 ) 에 받으므로, 조회 API 와 같은 값을 같은 순서로 보낸다. <p>
+ *
+ * - event id : "{store epoch}-{version}". client 가 다시 붙을 때 Last-Event-ID 로 보내면, 그 뒤에 들어온 값부터 보낸다. <p>
+ * - buffer : 구독자마다 크기가 정해진 buffer 를 둔다. 느린 구독자 때문에 가득 차면 오래된 event 부터 버리고,
+ *   보낼 차례가 되면 store 의 ring 에서 다시 채운다. <p>
+ * - 이번 process 의 event id 이면, 그 뒤에 들어온 값을 ring 에서 빠짐없이 version 순서로 다시 보낸다. <p>
+ * - 다른 process ( 재시작 전, 다른 node ) 의 event id 이거나, 다시 보낼 값이 maxReplaySize 보다 많거나 ring 에서 이미 밀려났으면
+ *   spec 마다 최신 값만 보낸다. 그것도 maxReplaySize 보다 많으면 "reset" event 만 보낸다.
+ *   client 는 조회 API 로 최신 값을 다시 읽고 이어서 받는다. <p>
+ *
+ * 다른 node 가 계산한 값 : store 에는 이 node 가 저장한 값만 바로 들어온다. 다른 node 가 계산한 spec 은 구독 중인 동안
+ * dbRefreshMillis 마다 DB 를 묶어서 확인해서 store 에 넣으므로, 그만큼 늦게 온다. ( {@link ValueQueryService} )
+ */
+@Slf4j
+@Service
+public class ValueStreamService {
+
+  private static final String EVENT_NAME = "value";
+
+  /** 다시 채울 값이 너무 많을 때 보낸다. client 는 조회 API 로 최신 값을 다시 읽어야 한다. */
+  private static final String RESET_EVENT_NAME = "reset";
+
+  /** 구독자 하나 */
+  private class Subscriber {
+    private final SseEmitter emitter;
+
+    /** null 이면 전체 spec */
+    private final Set<Integer> ids;
+
+    private final ArrayDeque<RecordedValue> buffer = new ArrayDeque<>();
+
+    /** buffer 에서 버린 event 가 있으면 true. 보낼 때 store 에서 다시 채운다. */
+    private boolean gap;
+
+    /** 다른 process 의 event id 로 다시 붙은 경우. 처음 다시 채울 때 version 을 비교할 수 없으므로 spec 별 최신 값만 보낸다. */
+    private boolean latestOnly;
+
+    /** 마지막으로 보낸 version. 한 번에 하나만 도는 sender thread 에서만 바꾼다. */
+    private long lastSentVersion;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    /**
+     * 붙기 전에 들어온 값을 놓치지 않도록, 처음에는 lastSentVersion 이후에 들어온 값으로 채우고 시작한다.
+     */
+    Subscriber(SseEmitter emitter, Set<Integer> ids, long lastSentVersion, boolean latestOnly) {
+      this.emitter = emitter;
+      this.ids = ids;
+      this.lastSentVersion = lastSentVersion;
+      this.latestOnly = latestOnly;
+      this.gap = true;
+    }
+
+    synchronized void offer(RecordedValue value) {
+      if (null != ids && !ids.contains(value.getId())) {
+        return;
+      }
+      if (buffer.size() >= subscriberBufferSize) {
+        buffer.pollFirst();
+        gap = true;
+        droppedCounter.increment();
+      }
+      buffer.addLast(value);
+    }
+
+    synchronized RecordedValue poll() {
+      return buffer.pollFirst();
+    }
+
+    synchronized boolean takeGap() {
+      boolean hadGap = gap;
+      if (hadGap) {
+        // 이력에서 다시 채우므로, 지금 쌓여있는 것들은 필요 없다.
+        buffer.clear();
+        gap = false;
+      }
+      return hadGap;
+    }
+
+    synchronized boolean hasPending() {
+      return gap || !buffer.isEmpty();
+    }
+  }
+
+  private final DataManager dataManager;
+  private final RecentValueStore recentValueStore;
+  private final ValueQueryService valueQueryService;
+
+  private final int maxSubscribers;
+  private final int subscriberBufferSize;
+  private final int maxReplaySize;
+  private final long timeoutMillis;
+  private final long heartbeatIntervalMillis;
+
+  private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+  private final Consumer<RecordedValue> storeListener = this::publish;
+
+  private final ExecutorService senderPool;
+  private final ScheduledExecutorService heartbeatTimer =
+      Executors.newSingleThreadScheduledExecutor(threadFactory("value-stream-heartbeat", true));
+
+  /** DB 확인이 느려도 heartbeat 가 밀리지 않도록 따로 돈다. */
+  private final ScheduledExecutorService refreshTimer =
+      Executors.newSingleThreadScheduledExecutor(threadFactory("value-stream-refresh", true));
+
+  private final Counter droppedCounter;
+  private final Counter resetCounter;
+
+  public ValueStreamService(DataManager dataManager, ValueQueryService valueQueryService, ValueStreamConfig config,
+      MeterRegistry registry) {
+    this.dataManager = dataManager;
+    this.recentValueStore = dataManager.getRecentValueStore();
+    this.valueQueryService = valueQueryService;
+    this.maxSubscribers = config.getMaxSubscribers();
+    this.subscriberBufferSize = Math.max(1, config.getSubscriberBufferSize());
+    this.maxReplaySize = Math.max(1, config.getMaxReplaySize());
+    this.timeoutMillis = config.getTimeoutMillis();
+    this.heartbeatIntervalMillis = config.getHeartbeatIntervalMillis();
+    this.senderPool = Executors.newFixedThreadPool(Math.max(1, config.getSenderThreads()),
+        threadFactory("value-stream-sender", true));
+
+    Gauge.builder("distribute.value.stream.subscribers", subscribers, Set::size)
+        .description("SSE 구독자 수")
+        .register(registry);
+    this.droppedCounter = Counter.builder("distribute.value.stream.dropped")
+        .description("구독자 buffer 가 가득 차서 버린 event 수")
+        .register(registry);
+    this.resetCounter = Counter.builder("distribute.value.stream.reset")
+        .description("다시 채울 값이 너무 많아서 reset event 를 보낸 수")
+        .register(registry);
+  }
+
+  @PostConstruct
+  public void start() {
+    recentValueStore.addListener(storeListener);
+    if (heartbeatIntervalMillis > 0) {
+      heartbeatTimer.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatIntervalMillis, heartbeatIntervalMillis,
+          TimeUnit.MILLISECONDS);
+    }
+    long refreshMillis = valueQueryService.getDbRefreshMillis();
+    if (refreshMillis > 0) {
+      refreshTimer.scheduleWithFixedDelay(this::refreshSubscribedSpecs, refreshMillis, refreshMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    recentValueStore.removeListener(storeListener);
+    heartbeatTimer.shutdownNow();
+    refreshTimer.shutdownNow();
+    senderPool.shutdownNow();
+    for (Subscriber subscriber : subscribers) {
+      subscriber.emitter.complete();
+    }
+    subscribers.clear();
+  }
+
+  /**
+   * @param ids         받을 spec id 들. 비어있으면 전체
+   * @param lastEventId client 가 마지막으로 받은 event id. 있으면 그 뒤의 값부터 보낸다.
+   * @return 구독자가 너무 많으면 null
+   */
+  public SseEmitter subscribe(Collection<Integer> ids, String lastEventId) {
+    if (subscribers.size() >= maxSubscribers) {
+      return null;
+    }
+
+    SseEmitter emitter = new SseEmitter(timeoutMillis);
+    Set<Integer> idFilter = null == ids || ids.isEmpty() ? null : Set.copyOf(ids);
+
+    // Last-Event-ID 가 없으면 지금부터 받는다. 붙는 사이에 들어온 값은 다시 채울 때 들어가고, 겹치는 것은 version 으로 걸러진다.
+    long resumeVersion = parseVersion(lastEventId);
+    long startVersion = resumeVersion >= 0 ? resumeVersion : recentValueStore.getCurrentVersion();
+    Subscriber subscriber = new Subscriber(emitter, idFilter, startVersion, isForeignEpoch(lastEventId));
+
+    emitter.onCompletion(() -> close(subscriber));
+    emitter.onTimeout(() -> close(subscriber));
+    emitter.onError(e -> close(subscriber));
+
+    subscribers.add(subscriber);
+    schedule(subscriber);
+    return emitter;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * store 에 값이 들어올 때마다 불린다. 구독자 buffer 에 넣기만 하고, 보내는 것은 sender thread 가 한다.
+   */
+  private void publish(RecordedValue value) {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(value);
+      schedule(subscriber);
+    }
+  }
+
+  private void schedule(Subscriber subscriber) {
+    if (!subscriber.closed && subscriber.hasPending() && subscriber.scheduled.compareAndSet(false, true)) {
+      try {
+        senderPool.execute(() -> drain(subscriber));
+      } catch (RuntimeException e) {
+        // 종료 중
+        subscriber.scheduled.set(false);
+      }
+    }
+  }
+
+  /**
+   * 구독자 하나에 대해 한 번에 하나의 sender thread 만 돈다.
+   */
+  private void drain(Subscriber subscriber) {
+    try {
+      while (!subscriber.closed) {
+        if (subscriber.takeGap()) {
+          replay(subscriber);
+          continue;
+        }
+
+        RecordedValue value = subscriber.poll();
+        if (null == value) {
+          break;
+        }
+        if (value.getVersion() > subscriber.lastSentVersion) {
+          send(subscriber, value);
+        }
+      }
+    } catch (IOException | IllegalStateException e) {
+      log.debug("value stream subscriber disconnected", e);
+      subscriber.emitter.completeWithError(e);
+      close(subscriber);
+    } finally {
+      subscriber.scheduled.set(false);
+    }
+    // 마지막 poll 과 flag 를 내리는 사이에 들어온 값
+    schedule(subscriber);
+  }
+
+  /**
+   * buffer 를 비운 뒤에 부른다. 지금 version 까지 들어온 값을 보내고, 그 뒤의 값은 buffer 로 받는다. <p>
+   * 지금 version 보다 뒤의 값은 buffer 를 비운 뒤에 들어왔으므로 buffer 에 있다.
+   */
+  private void replay(Subscriber subscriber) throws IOException {
+    long uptoVersion = recentValueStore.getCurrentVersion();
+    List<RecordedValue> values = null;
+    if (!subscriber.latestOnly) {
+      values = recentValueStore.allSince(subscriber.ids, subscriber.lastSentVersion, uptoVersion, maxReplaySize);
+    }
+    if (null == values) {
+      // 다른 process 의 event id 이거나, 빠짐없이 보낼 수 없으면 ( 너무 많거나 ring 에서 밀려남 ) spec 별 최신 값만 보낸다.
+      values = recentValueStore.latestSince(subscriber.ids, subscriber.lastSentVersion, uptoVersion, maxReplaySize);
+    }
+    subscriber.latestOnly = false;
+
+    if (null == values) {
+      resetCounter.increment();
+      subscriber.emitter.send(SseEmitter.event()
+          .id(eventId(uptoVersion))
+          .name(RESET_EVENT_NAME)
+          .data(""));
+    } else {
+      for (RecordedValue value : values) {
+        send(subscriber, value);
+      }
+    }
+    subscriber.lastSentVersion = Math.max(subscriber.lastSentVersion, uptoVersion);
+  }
+
+  private void send(Subscriber subscriber, RecordedValue value) throws IOException {
+    ValueResponse data = new ValueResponse(value.getId(), dataManager.getValueName(value.getId()), value.getValue(),
+        value.getValueTsMillis(), value.getCalculateTsMillis());
+    subscriber.emitter.send(SseEmitter.event()
+        .id(eventId(value.getVersion()))
+        .name(EVENT_NAME)
+        .data(data));
+    subscriber.lastSentVersion = value.getVersion();
+  }
+
+  private String eventId(long version) {
+    return recentValueStore.getEpoch() + '-' + version;
+  }
+
+  /**
+   * 구독 중인 spec 중 다른 node 가 계산하는 것들의 새 값을 DB 에서 가져온다. 가져온 값은 store 를 거쳐 구독자에게 간다.
+   */
+  private void refreshSubscribedSpecs() {
+    if (subscribers.isEmpty()) {
+      return;
+    }
+
+    Set<Integer> ids = new HashSet<>();
+    for (Subscriber subscriber : subscribers) {
+      if (null == subscriber.ids) {
+        ids = dataManager.getSpecCache().getAll().stream().map(ImplSpec::getId).collect(Collectors.toSet());
+        break;
+      }
+      ids.addAll(subscriber.ids);
+    }
+
+    try {
+      valueQueryService.refreshIfDue(ids);
+    } catch (RuntimeException e) {
+      // timer 가 멈추지 않도록 한다.
+      log.warn("fail to refresh subscribed values", e);
+    }
+  }
+
+  private void sendHeartbeats() {
+    for (Subscriber subscriber : subscribers) {
+      try {
+        subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+      } catch (IOException | IllegalStateException e) {
+        subscriber.emitter.completeWithError(e);
+        close(subscriber);
+      }
+    }
+  }
+
+  private void close(Subscriber subscriber) {
+    subscriber.closed = true;
+    subscribers.remove(subscriber);
+  }
+
+  /**
+   * @return 이번 process 의 event id 가 아니면 0 ( spec 별 최신 값 ), 없거나 형식이 틀리면 -1
+   */
+  private long parseVersion(String lastEventId) {
+    if (null == lastEventId || lastEventId.isBlank()) {
+      return -1L;
+    }
+
+    int separator = lastEventId.lastIndexOf('-');
+    if (separator <= 0) {
+      return -1L;
+    }
+    if (isForeignEpoch(lastEventId)) {
+      // 재시작 전이나 다른 node 의 event id. version 을 비교할 수 없으므로 spec 별 최신 값을 보낸다. ( 많으면 reset )
+      return 0L;
+    }
+    try {
+      return Long.parseLong(lastEventId.substring(separator + 1));
+    } catch (NumberFormatException e) {
+      return -1L;
+    }
+  }
+
+  /**
+   * @return 형식은 맞지만 이번 process 의 event id 가 아니면 true
+   */
+  private boolean isForeignEpoch(String lastEventId) {
+    if (null == lastEventId) {
+      return false;
+    }
+    int separator = lastEventId.lastIndexOf('-');
+    return separator > 0 && !recentValueStore.getEpoch().equals(lastEventId.substring(0, separator));
+  }
+}
@@ -0,0 +1,149 @@
+package com.devtaco.distribute.util;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.devtaco.distribute.config.RateLimitRuleConfig;
+
+import io.github.bucket4j.ConsumptionProbe;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * thread 를 붙잡지 않는 rate limiter. <p>
+ * {@link #acquire(String)} 는 token 을 얻는 순간 완료되는 CompletableFuture 를 준다. <p>
+ * provider 마다 FIFO 대기열을 두어 먼저 요청한 쪽이 먼저 token 을 받는다. <p>
+ * token 이 없으면 bucket4j 가 알려주는 refill 까지의 시간(ns) 만큼만 timer 를 걸고 기다린다.
+ */
+@Slf4j
+public class AsyncRateLimiter {
+
+  private static AsyncRateLimiter instance = new AsyncRateLimiter();
+
+  public static AsyncRateLimiter getInstance() {
+    return instance;
+  }
+
+  private final RateLimitRuleConfig rateLimit = RateLimitRuleConfig.getInstance();
+
+  /** provider -> 대기열 */
+  private final ConcurrentHashMap<String, WaitQueue> waitQueues = new ConcurrentHashMap<>();
+
+  /** refill 시점에 대기열을 다시 깨우는 timer. 여기서는 token 확인만 하고 바로 빠진다. */
+  private final ScheduledExecutorService refillTimer = Executors
+      .newSingleThreadScheduledExecutor(threadFactory("rate-limit-timer", true));
+
+  /** future 완료( = 이어지는 callback 실행 )는 timer thread 가 아닌 곳에서 한다. */
+  private final Executor completionExecutor = ForkJoinPool.commonPool();
+
+  private AsyncRateLimiter() {
+  }
+
+  /**
+   * provider 의 token 을 요청한다.
+   *
+   * @return token 을 얻으면 완료되는 future. 취소하면 대기열에서 빠진다.
+   */
+  public CompletableFuture<Void> acquire(String provider) {
+    WaitQueue queue = waitQueues.computeIfAbsent(provider, WaitQueue::new);
+    CompletableFuture<Void> permit = new CompletableFuture<>();
+    queue.waiters.add(permit);
+    queue.drain();
+    return permit;
+  }
+
+  /**
+   * provider 하나의 대기열. <p>
+   * drain 은 한 번에 한 thread 만 하고, 그 사이에 들어온 요청은 drain 중인 thread 가 다시 확인한다.
+   */
+  private class WaitQueue {
+
+    private final String provider;
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean timerArmed = new AtomicBoolean(false);
+
+    WaitQueue(String provider) {
+      this.provider = provider;
+    }
+
+    void drain() {
+      while (draining.compareAndSet(false, true)) {
+        long nanosToWait;
+        try {
+          nanosToWait = grantAvailable();
+        } finally {
+          draining.set(false);
+        }
+
+        if (nanosToWait > 0) {
+          armTimer(nanosToWait);
+          return;
+        }
+
+        // drain 을 놓은 사이에 새로 들어온 요청이 없으면 끝.
+        if (waiters.isEmpty()) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * 대기열 앞에서부터 token 을 나눠준다.
+     *
+     * @return 다음 token 까지 기다려야 하는 시간(ns). 대기열이 비면 0
+     */
+    private long grantAvailable() {
+      CompletableFuture<Void> head;
+      while (null != (head = waiters.peek())) {
+        if (head.isDone()) { // 호출한 쪽에서 취소함
+          waiters.poll();
+          continue;
+        }
+
+        // 429 의 Retry-After 등으로 멈춘 provider 는 그 시간이 지날 때까지 기다린다.
+        long pausedNanos = rateLimit.getPausedNanos(provider);
+        if (pausedNanos > 0) {
+          return pausedNanos;
+        }
+
+        // 여러 node 가 quota 를 나눠 쓰는 경우, cluster 의 token 부터 얻는다.
+        long quotaNanos = rateLimit.acquireClusterToken(provider);
+        if (quotaNanos > 0) {
+          return quotaNanos;
+        }
+
+        ConsumptionProbe probe = rateLimit.tryConsumeBy(provider);
+        if (!probe.isConsumed()) {
+          rateLimit.releaseClusterToken(provider);
+          return Math.max(1L, probe.getNanosToWaitForRefill());
+        }
+
+        waiters.poll();
+        CompletableFuture<Void> granted = head;
+        completionExecutor.execute(() -> granted.complete(null));
+      }
+      return 0L;
+    }
+
+    private void armTimer(long nanosToWait) {
+      if (!timerArmed.compareAndSet(false, true)) {
+        return; // 이미 깨어날 예정
+      }
+
+      log.debug("{} has limited so wait {} nanos", provider, nanosToWait);
+      refillTimer.schedule(() -> {
+        timerArmed.set(false);
+        drain();
+      }, nanosToWait, TimeUnit.NANOSECONDS);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package com.devtaco.distribute.util;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.AtomicValue;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.curator.retry.BoundedExponentialBackoffRetry;
+import org.apache.zookeeper.KeeperException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 여러 node 가 provider 의 요청 quota 를 나눠 쓰도록 ZooKeeper 에서 token 을 묶음( block ) 단위로 빌려온다. <p>
+ * 시간을 window( 기본 1초 ) 로 나누고, window 마다 "/rate-limit-quota/{provider}/{window 번호}" counter 에
+ * 빌려간 token 수를 더한다. counter 가 budget 을 넘으면 그 window 에는 더 빌려주지 않는다. <p>
+ * 빌린 token 은 local 에서 하나씩 쓰므로, ZooKeeper 는 block 을 다 쓸 때만 접근한다. <p>
+ * block 은 다 쓰기 전에 lease thread 에서 미리 빌려둔다. {@link #tryAcquire(String)} 는 이미 빌려온 token 만 나눠주고
+ * ZooKeeper 를 기다리지 않는다. ( rate limit timer 등 짧게 빠져야 하는 thread 에서 부른다 ) <p>
+ * budget 은 설정의 provider 별 값이다. 모든 node 가 같은 counter 를 쓰므로 모든 node 에 같은 값을 줘야 한다. <p>
+ * window 번호는 각 node 의 시계로 정하므로, node 들의 시계가 맞춰져 있어야 한다. <p>
+ * 지난 window 의 counter 는 timer 가 주기적으로 지운다. ( 요청이 드문 provider 의 counter 도 남지 않는다 )
+ */
+@Slf4j
+public class ClusterRateLimitQuota {
+
+  private static final String ROOT_PATH = "/rate-limit-quota";
+
+  /** 지난 window 의 counter 들을 지우는 주기 */
+  private static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  /** counter 를 다른 node 와 동시에 바꾸다 실패하면, 이 시간 안에서 임의로 기다렸다가 다시 빌린다. */
+  private static final long CONTENTION_BACKOFF_MAX_MILLIS = 20L;
+
+  /** 빌려오는 중이라 token 이 없을 때 다시 확인할 때까지의 시간 */
+  private static final long LEASE_PENDING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** provider 하나의 이번 window 에 빌려온 token */
+  private static class Lease {
+    private long window = -1;
+    private long remaining;
+
+    /** 이번 window 의 budget 을 다 써서 더 빌릴 수 없음 */
+    private boolean exhausted;
+
+    /** lease thread 가 빌려오는 중 */
+    private boolean leasing;
+
+    /** 다른 node 와 부딪힌 뒤 이 시각( nanoTime ) 까지는 다시 빌리지 않는다. 0 이면 없음 */
+    private long retryAtNanos;
+  }
+
+  private final CuratorFramework client;
+  private final int leaseBlockSize;
+  private final long windowMillis;
+
+  /** 남은 token 이 이보다 적으면 다음 block 을 미리 빌린다. */
+  private final int prefetchThreshold;
+
+  private final int defaultBudgetPerSec;
+  private final Map<String, Integer> budgetPerSecByProvider;
+
+  private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService cleanupTimer =
+      Executors.newSingleThreadScheduledExecutor(threadFactory("rate-limit-quota-cleanup", true));
+
+  /** ZooKeeper 에서 block 을 빌려오는 thread. provider 마다 한 번에 하나만 빌린다. */
+  private final ExecutorService leaseExecutor =
+      Executors.newCachedThreadPool(threadFactory("rate-limit-quota-lease", true));
+
+  /**
+   * @param client                  registry center 의 curator client ( namespace 가 적용된 것 )
+   * @param leaseBlockSize          한 번에 빌려오는 token 수
+   * @param windowMillis            budget 이 적용되는 시간 단위
+   * @param defaultBudgetPerSec     budgetPerSecByProvider 에 없는 provider 의 cluster 전체 초당 요청 수
+   * @param budgetPerSecByProvider  provider -> cluster 전체의 초당 요청 수
+   */
+  public ClusterRateLimitQuota(CuratorFramework client, int leaseBlockSize, long windowMillis,
+      int defaultBudgetPerSec, Map<String, Integer> budgetPerSecByProvider) {
+    this.client = client;
+    this.leaseBlockSize = Math.max(1, leaseBlockSize);
+    this.windowMillis = Math.max(1L, windowMillis);
+    this.prefetchThreshold = Math.max(1, this.leaseBlockSize / 2);
+    this.defaultBudgetPerSec = Math.max(1, defaultBudgetPerSec);
+    this.budgetPerSecByProvider = Map.copyOf(budgetPerSecByProvider);
+
+    long cleanupIntervalMillis = Math.max(CLEANUP_INTERVAL_MILLIS, this.windowMillis * 2);
+    cleanupTimer.scheduleWithFixedDelay(this::cleanupOldWindows, cleanupIntervalMillis, cleanupIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public void close() {
+    cleanupTimer.shutdownNow();
+    leaseExecutor.shutdownNow();
+  }
+
+  /**
+   * @return provider 의 cluster 전체 초당 요청 수
+   */
+  public int getBudgetPerSec(String provider) {
+    return Math.max(1, budgetPerSecByProvider.getOrDefault(provider, defaultBudgetPerSec));
+  }
+
+  /**
+   * 이미 빌려온 token 하나를 얻는다. ZooKeeper 를 기다리지 않는다. <p>
+   * token 이 모자라면 lease thread 에 다음 block 을 빌리게 하고, 조금 뒤에 다시 부르라고 알려준다.
+   *
+   * @return 0 이면 얻음. 아니면 기다려야 하는 시간(ns). budget 을 다 썼으면 다음 window 까지
+   */
+  public long tryAcquire(String provider) {
+    long nowMillis = System.currentTimeMillis();
+    long window = nowMillis / windowMillis;
+    long nanosToNextWindow = TimeUnit.MILLISECONDS.toNanos((window + 1) * windowMillis - nowMillis);
+
+    Lease lease = leases.computeIfAbsent(provider, key -> new Lease());
+    synchronized (lease) {
+      if (lease.window != window) {
+        // 지난 window 에 남은 token 은 버린다.
+        lease.window = window;
+        lease.remaining = 0;
+        lease.exhausted = false;
+        lease.retryAtNanos = 0L;
+      }
+
+      if (lease.remaining > 0) {
+        lease.remaining--;
+        if (lease.remaining < prefetchThreshold) {
+          // 다 쓰기 전에 다음 block 을 미리 빌려둔다.
+          leaseAhead(provider, lease, window);
+        }
+        return 0L;
+      }
+      if (lease.exhausted) {
+        return nanosToNextWindow;
+      }
+
+      leaseAhead(provider, lease, window);
+      if (0L != lease.retryAtNanos) {
+        return Math.max(LEASE_PENDING_WAIT_NANOS, lease.retryAtNanos - System.nanoTime());
+      }
+      return LEASE_PENDING_WAIT_NANOS;
+    }
+  }
+
+  /**
+   * lease 의 lock 을 잡은 상태에서 호출한다. 이미 빌리는 중이면 아무것도 하지 않는다.
+   */
+  private void leaseAhead(String provider, Lease lease, long window) {
+    if (lease.leasing || lease.exhausted) {
+      return;
+    }
+    if (0L != lease.retryAtNanos) {
+      if (System.nanoTime() - lease.retryAtNanos < 0) {
+        return;
+      }
+      lease.retryAtNanos = 0L;
+    }
+
+    lease.leasing = true;
+    try {
+      leaseExecutor.execute(() -> completeLease(provider, lease, window));
+    } catch (RejectedExecutionException e) {
+      // 종료 중
+      lease.leasing = false;
+    }
+  }
+
+  private void completeLease(String provider, Lease lease, long window) {
+    long budget = Math.max(1L, getBudgetPerSec(provider) * windowMillis / TimeUnit.SECONDS.toMillis(1));
+    long granted = leaseBlock(provider, window, budget);
+
+    synchronized (lease) {
+      lease.leasing = false;
+      if (lease.window != window) {
+        return; // 빌리는 사이에 window 가 지나감. 지난 window 의 token 은 버린다.
+      }
+
+      if (granted < 0) {
+        // 다른 node 와 부딪혔을 뿐 budget 이 남아있을 수 있으므로, window 를 포기하지 않고 잠깐 뒤에 다시 빌린다.
+        lease.retryAtNanos = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(1 + ThreadLocalRandom.current().nextLong(CONTENTION_BACKOFF_MAX_MILLIS));
+      } else if (0 == granted) {
+        lease.exhausted = true;
+      } else {
+        lease.remaining += granted;
+      }
+    }
+  }
+
+  /**
+   * 얻은 token 을 쓰지 않았으면 돌려놓는다. 같은 window 안에서만 돌려놓을 수 있다.
+   */
+  public void release(String provider) {
+    Lease lease = leases.get(provider);
+    if (null == lease) {
+      return;
+    }
+    synchronized (lease) {
+      if (lease.window == System.currentTimeMillis() / windowMillis) {
+        lease.remaining++;
+      }
+    }
+  }
+
+  /**
+   * @return 빌려온 token 수. budget 을 다 썼으면 0, 다른 node 와 계속 부딪혀서 못 빌렸으면 -1
+   */
+  private long leaseBlock(String provider, long window, long budget) {
+    String providerPath = ROOT_PATH + "/" + URLEncoder.encode(provider, StandardCharsets.UTF_8);
+    // 부딪히면 backoff 하면서 여러 번 다시 시도한다. node 가 많을수록 자주 부딪힌다.
+    DistributedAtomicLong counter = new DistributedAtomicLong(client, providerPath + "/" + window,
+        new BoundedExponentialBackoffRetry(2, 32, 8));
+
+    try {
+      AtomicValue<Long> leased = counter.add((long) leaseBlockSize);
+      if (!leased.succeeded()) {
+        log.debug("fail to lease rate limit quota of {} by contention", provider);
+        return -1L;
+      }
+
+      // budget 을 넘은 만큼은 빼고 빌린다. counter 는 budget 을 넘어도 그대로 둔다. ( 이후 요청은 모두 0 이 된다 )
+      return Math.max(0L, Math.min(leaseBlockSize, budget - leased.preValue()));
+    } catch (Exception e) {
+      // ZooKeeper 에 접근할 수 없으면 node 의 local limit 만으로 돌린다.
+      log.warn("fail to lease rate limit quota of {}, fall back to local limit", provider, e);
+      return leaseBlockSize;
+    }
+  }
+
+  /**
+   * 모든 provider 의 지난 window counter 를 지운다. 다른 node 가 쓰는 provider 도 같이 지운다.
+   */
+  void cleanupOldWindows() {
+    long currentWindow = System.currentTimeMillis() / windowMillis;
+    try {
+      for (String provider : client.getChildren().forPath(ROOT_PATH)) {
+        String providerPath = ROOT_PATH + "/" + provider;
+        for (String child : client.getChildren().forPath(providerPath)) {
+          if (isOldWindow(child, currentWindow)) {
+            client.delete().quietly().forPath(providerPath + "/" + child);
+          }
+        }
+      }
+    } catch (KeeperException.NoNodeException e) {
+      // 아직 빌려간 적이 없음
+    } catch (Exception e) {
+      log.debug("fail to cleanup old rate limit quota", e);
+    }
+  }
+
+  private static boolean isOldWindow(String child, long currentWindow) {
+    try {
+      return Long.parseLong(child) < currentWindow - 1;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
@@ -1,10 +1,30 @@
 package com.devtaco.distribute.util;
 
 import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.scheduling.support.CronExpression;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class CronUtils {
   public static final String TIMEZONE_ID_UTC = "UTC";
 
+  /** previousExecutionDate 탐색 한계 ( 1년 ) */
+  private static final long MAX_LOOKBACK_SECONDS = 366L * 24 * 60 * 60;
+
+  /** compile 해둔 cron expression 의 최대 개수 */
+  private static final int MAX_COMPILED_CACHE_SIZE = 1024;
+
+  /**
+   * canonical expression -> compile 된 CronExpression. <p>
+   * spec 의 cron 종류는 많지 않으므로 밀어내지 않는다. 최대 개수가 차면 더 넣지 않고 그때그때 parse 한다. <p>
+   * CronExpression 은 immutable 이라 여러 thread 가 같이 써도 된다.
+   */
+  private static final ConcurrentHashMap<String, CronExpression> compiledCache = new ConcurrentHashMap<>();
+
   // accidentally instantiation 막기 위해 constructor 를 private 로 만듬
   private CronUtils(){ }
 
@@ -37,6 +57,60 @@ public class CronUtils {
     return String.join(" ", parts); // 다시 cron expression ( space sparated String ) 으로 만든다.
   }
 
+  /**
+   * cron expression 을 compile 한다. canonical expression 기준으로 cache 해서, 같은 expression 은 한 번만 parse 한다.
+   *
+   * @throws IllegalArgumentException 올바르지 않은 expression 인 경우
+   */
+  public static CronExpression compile( String strCronExpr ){
+    String canonical = toCanonicalExpression( strCronExpr );
+
+    CronExpression cached = compiledCache.get( canonical );
+    if ( null != cached ) {
+      return cached;
+    }
+
+    // 동시에 같은 expression 을 parse 하더라도 결과는 같다.
+    CronExpression compiled = CronExpression.parse( canonical );
+    if ( compiledCache.size() >= MAX_COMPILED_CACHE_SIZE ) {
+      return compiled;
+    }
+    CronExpression raced = compiledCache.putIfAbsent( canonical, compiled );
+    return null == raced ? compiled : raced;
+  }
+
+  /**
+   * 여러 cron expression 의 실행 시점을 key 별로 count 개씩 구해서, 시간 순서의 index 하나로 합친다.
+   * 올바르지 않은 expression 은 건너뛴다.
+   *
+   * @param cronByKey         key( 예: spec id ) -> cron expression
+   * @param afterDateTimeUTC  기준 시간. 이 시간 이후의 실행 시점만 넣는다.
+   * @param count             key 별로 넣을 실행 시점 개수
+   */
+  public static <K> FireTimeIndex<K> buildFireTimeIndex( Map<K, String> cronByKey, ZonedDateTime afterDateTimeUTC, int count ){
+    FireTimeIndex<K> index = new FireTimeIndex<>();
+
+    for ( Map.Entry<K, String> entry : cronByKey.entrySet() ) {
+      CronExpression cronExpression;
+      try {
+        cronExpression = compile( entry.getValue() );
+      } catch ( IllegalArgumentException e ) {
+        log.warn( "skip invalid cron expression. key: {}, cron: {}", entry.getKey(), entry.getValue() );
+        continue;
+      }
+
+      ZonedDateTime fireTime = afterDateTimeUTC;
+      for ( int i = 0; i < count; i++ ) {
+        fireTime = cronExpression.next( fireTime );
+        if ( null == fireTime ) {
+          break;
+        }
+        index.add( fireTime, entry.getKey() );
+      }
+    }
+    return index;
+  }
+
   /**
    * cron expression 에 따라, 특정 시간(Instant) 이후 실행 예상 시점을 받는다.
    * 
@@ -49,11 +123,41 @@ public class CronUtils {
    */
   public static ZonedDateTime nextExecutionDate( String strCronExpr, ZonedDateTime afterDateTimeUTC ){
 
-    // spring 의 CronExpression 을 사용한다. CronExpression 은 Quartz lib. 에도 있어서,
-    // fully qualified class name 으로 instantiation 한다.
-    org.springframework.scheduling.support.CronExpression cronExpression
-      = org.springframework.scheduling.support.CronExpression.parse( strCronExpr );
+    // spring 의 CronExpression 을 사용한다. ( Quartz lib. 의 CronExpression 이 아님 )
+    return compile( strCronExpr ).next( afterDateTimeUTC );
+  }
+
+  /**
+   * cron expression 에 따라, 특정 시간 이전(같은 시간 포함)의 마지막 실행 시점을 구한다. <p>
+   * CronExpression 은 이전 시점을 구하는 API 가 없으므로, 탐색 구간을 2배씩 늘려가며 next 로 찾는다. <p>
+   * 여러 node 의 shard 가 "같은 회차" 를 식별할 때 사용한다.
+   *
+   * @param strCronExpr         cron expression string.
+   * @param beforeDateTimeUTC   기준 시간.
+   * @return beforeDateTimeUTC 이전 마지막 실행 시간. 1년 안에 실행 시점이 없으면 null
+   */
+  public static ZonedDateTime previousExecutionDate( String strCronExpr, ZonedDateTime beforeDateTimeUTC ){
 
-    return cronExpression.next( afterDateTimeUTC );
+    CronExpression cronExpression = compile( strCronExpr );
+
+    long windowSec = 1;
+    while ( true ) {
+      ZonedDateTime candidate = cronExpression.next( beforeDateTimeUTC.minusSeconds( windowSec ) );
+      if ( null == candidate || candidate.isAfter( beforeDateTimeUTC ) ) {
+        if ( windowSec >= MAX_LOOKBACK_SECONDS ) {
+          return null;
+        }
+        windowSec = Math.min( windowSec * 2, MAX_LOOKBACK_SECONDS );
+        continue;
+      }
+
+      // 구간 안에 실행 시점이 있으면, 기준 시간을 넘기 직전까지 따라간다.
+      ZonedDateTime next = cronExpression.next( candidate );
+      while ( null != next && !next.isAfter( beforeDateTimeUTC ) ) {
+        candidate = next;
+        next = cronExpression.next( candidate );
+      }
+      return candidate;
+    }
   }
 }
@@ -0,0 +1,96 @@
+package com.devtaco.distribute.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * job 본문과 외부 http 호출을 어떤 thread 에서 돌릴지 정한다. <p>
+ * virtual thread 모드면 blocking 작업을 virtual thread 에서 돌리고, provider 별 동시 요청 수는 {@link ProviderPermits} 로 제한한다. <p>
+ * 빌드는 java 11 기준이라 virtual thread API 는 reflection 으로 찾는다. 실행 JVM 이 지원하지 않으면 platform thread 로 돌린다.
+ */
+@Slf4j
+public class ExecutionThreads {
+
+  private static ExecutionThreads instance = new ExecutionThreads();
+
+  public static ExecutionThreads getInstance() {
+    return instance;
+  }
+
+  /** virtual thread 로 돌지 여부. 설정을 켰더라도 JVM 이 지원하지 않으면 false */
+  private volatile boolean virtualThreads = false;
+
+  /** virtual thread 모드에서 blocking http 호출을 돌릴 executor */
+  private volatile ExecutorService ioExecutor;
+
+  /** provider 하나에 동시에 나갈 수 있는 요청 수 */
+  private volatile int maxConcurrentRequestsPerProvider = 16;
+
+  /** provider -> 동시 요청 permit */
+  private final ConcurrentHashMap<String, ProviderPermits> providerPermits = new ConcurrentHashMap<>();
+
+  private ExecutionThreads() {
+  }
+
+  /**
+   * {@link com.devtaco.distribute.config.JobExecutionConfig} 가 startup 시 호출한다.
+   */
+  public synchronized void configure(boolean useVirtualThreads, int maxConcurrentRequestsPerProvider) {
+    this.maxConcurrentRequestsPerProvider = Math.max(1, maxConcurrentRequestsPerProvider);
+    this.providerPermits.clear();
+
+    if (useVirtualThreads && null == ioExecutor) {
+      ioExecutor = newVirtualThreadPerTaskExecutor("http-io-");
+    }
+    this.virtualThreads = useVirtualThreads && null != ioExecutor;
+
+    if (useVirtualThreads && !virtualThreads) {
+      log.warn("virtual thread is not supported on java {}, fall back to platform thread",
+          System.getProperty("java.version"));
+    }
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * @return virtual thread 모드가 아니면 null
+   */
+  public ExecutorService getIoExecutor() {
+    return virtualThreads ? ioExecutor : null;
+  }
+
+  /**
+   * @return provider 의 동시 요청 permit. 요청 전에 acquire( async 는 acquireAsync ), 끝나면 release 한다.
+   */
+  public ProviderPermits permitsOf(String provider) {
+    return providerPermits.computeIfAbsent(provider, key -> new ProviderPermits(maxConcurrentRequestsPerProvider));
+  }
+
+  /**
+   * 작업마다 새 virtual thread 를 만드는 executor ( java 21 의 Executors.newThreadPerTaskExecutor ) 를 만든다.
+   *
+   * @param namePrefix thread 이름 앞부분. 뒤에 0 부터 번호가 붙는다.
+   * @return 실행 JVM 이 virtual thread 를 지원하지 않으면 null
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+      builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+      ThreadFactory factory = (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+
+      return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+          .invoke(null, factory);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // java 21 미만이거나, preview 기능이 꺼져있는 경우
+      log.debug("virtual thread is not available", e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.devtaco.distribute.util;
+
+import java.time.ZonedDateTime;
+import java.time.chrono.ChronoZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 여러 cron 의 실행 시점을 시간 순서로 모아둔 index. ( {@link CronUtils#buildFireTimeIndex(Map, ZonedDateTime, int)} ) <p>
+ * "다음에 무엇이 언제 실행되는지" 를 expression parse 없이 O(log n) 으로 찾는다. <p>
+ * 만든 시점의 snapshot 이며, thread safe 하지 않다. spec 이 바뀌면 다시 만든다.
+ *
+ * @param <K> 실행 대상을 구분하는 key ( 예: spec id )
+ */
+public class FireTimeIndex<K> {
+
+  /** 실행 시점 -> 그 시점에 실행되는 key 들. 시간대가 달라도 같은 순간이면 같은 시점으로 본다. */
+  private final TreeMap<ZonedDateTime, List<K>> keysByFireTime =
+      new TreeMap<>(ChronoZonedDateTime.timeLineOrder());
+
+  private int size;
+
+  FireTimeIndex() {
+  }
+
+  void add(ZonedDateTime fireTime, K key) {
+    keysByFireTime.computeIfAbsent(fireTime, time -> new ArrayList<>(1)).add(key);
+    size++;
+  }
+
+  /**
+   * @return 가장 먼저 오는 실행 시점. 비어있으면 null
+   */
+  public ZonedDateTime firstFireTime() {
+    return keysByFireTime.isEmpty() ? null : keysByFireTime.firstKey();
+  }
+
+  /**
+   * @return dateTime 이후( 같은 시간 제외 ) 첫 실행 시점과 그 key 들. 없으면 null
+   */
+  public Map.Entry<ZonedDateTime, List<K>> nextAfter(ZonedDateTime dateTime) {
+    Map.Entry<ZonedDateTime, List<K>> entry = keysByFireTime.higherEntry(dateTime);
+    return null == entry ? null : Map.entry(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+  }
+
+  /**
+   * @return dateTime 이전( 같은 시간 포함 ) 마지막 실행 시점과 그 key 들. 없으면 null
+   */
+  public Map.Entry<ZonedDateTime, List<K>> lastAtOrBefore(ZonedDateTime dateTime) {
+    Map.Entry<ZonedDateTime, List<K>> entry = keysByFireTime.floorEntry(dateTime);
+    return null == entry ? null : Map.entry(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+  }
+
+  /**
+   * @return fireTime 에 실행되는 key 들. 없으면 빈 list
+   */
+  public List<K> keysAt(ZonedDateTime fireTime) {
+    List<K> keys = keysByFireTime.get(fireTime);
+    return null == keys ? Collections.emptyList() : Collections.unmodifiableList(keys);
+  }
+
+  /**
+   * @return [from, to) 구간의 실행 시점들. 시간 순서로 정렬되어 있다.
+   */
+  public NavigableMap<ZonedDateTime, List<K>> between(ZonedDateTime from, ZonedDateTime to) {
+    return Collections.unmodifiableNavigableMap(keysByFireTime.subMap(from, true, to, false));
+  }
+
+  /**
+   * key 하나의 다음 실행 시점. dateTime 이후를 앞에서부터 훑으므로, 시간 순서로 찾을 때는 {@link #nextAfter(ZonedDateTime)} 를 쓴다.
+   *
+   * @return key 의 dateTime 이후( 같은 시간 제외 ) 첫 실행 시점. index 범위 안에 없으면 null
+   */
+  public ZonedDateTime nextFireTimeOf(K key, ZonedDateTime dateTime) {
+    for (Map.Entry<ZonedDateTime, List<K>> entry : keysByFireTime.tailMap(dateTime, false).entrySet()) {
+      if (entry.getValue().contains(key)) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return 모든 ( 실행 시점, key ) 쌍의 개수
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return 0 == size;
+  }
+}
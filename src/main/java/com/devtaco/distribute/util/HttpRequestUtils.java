@@ -1,15 +1,27 @@
 package com.devtaco.distribute.util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.devtaco.distribute.config.OkHttpClientConfig;
-import com.devtaco.distribute.config.RateLimitRuleConfig;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.Buffer;
 
 @Slf4j
 public class HttpRequestUtils {
@@ -17,24 +29,146 @@ public class HttpRequestUtils {
   private static final OkHttpClient client = OkHttpClientConfig.getInstance()
       .getOkHttpClient()
       .newBuilder()
+      .cache(OkHttpClientConfig.getInstance().getResponseCache())
       .addInterceptor(RateLimitInterceptor.getInstance()).build();
-  private static final RateLimitRuleConfig rateLimit = RateLimitRuleConfig.getInstance();
 
+  /** cache 된 응답이 있어도 매번 provider 에 조건부 요청으로 확인한다. 바뀌지 않았으면 304 와 함께 cache 된 body 를 쓴다. */
+  private static final CacheControl REVALIDATE = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+
+  /** 끝난 공유 요청의 결과를 재사용하는 시간. 같은 cron 초에 뜬 job 들이 조금씩 늦게 들어와도 한 번만 요청한다. */
+  private static final long SHARED_RESPONSE_TTL_MILLIS = 500L;
+
+  /** 같은 요청을 동시에 여러 job 이 보내면 한 번만 보낸다. ( {@link #requestShared(Request, String)} ) */
+  private static final SingleFlight<String, String> sharedRequests = new SingleFlight<>(SHARED_RESPONSE_TTL_MILLIS);
+
+  /** streaming 응답을 읽을 parser 를 만든다. thread safe 하다. */
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final AsyncRateLimiter rateLimiter = AsyncRateLimiter.getInstance();
+  private static final ExecutionThreads executionThreads = ExecutionThreads.getInstance();
+
+  /**
+   * provider 별 동시 요청 수 제한 안에서 요청한다. 자리가 날 때까지, 그리고 rate limit token 이 생길 때까지 기다린다.
+   */
   public static String requestBy(Request request, String provider) {
 
-    checkReqLimit(provider);
+    ProviderPermits permits = acquirePermit(provider);
+    if (null == permits) {
+      return null;
+    }
+
+    try {
+      checkReqLimit(provider);
+      return execute(request, provider);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * {@link #requestBy(Request, String)} 와 같지만, 같은 provider 로 같은 요청( method, url, header, body ) 이 이미 나가 있으면
+   * 새로 보내지 않고 그 결과를 같이 받는다. rate limit token 도 한 번만 쓴다. <p>
+   * 여러 job 이 같은 원천 데이터를 읽는 경우에 사용한다. 요청마다 결과가 달라야 하는 호출( 예: alert 전송 ) 에는 쓰지 않는다.
+   */
+  public static String requestShared(Request request, String provider) {
+    try {
+      return sharedRequests
+          .execute(toSharedKey(request, provider),
+              () -> CompletableFuture.completedFuture(requestBy(request, provider)))
+          .get();
+    } catch (InterruptedException e) {
+      log.error("While waiting shared request to {}, interrupted", provider, e);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.error("shared request to {} occur Exception", provider, e.getCause());
+    }
+    return null;
+  }
+
+  /**
+   * {@link #requestShared(Request, String)} 의 non-blocking 버전.
+   */
+  public static CompletableFuture<String> requestSharedAsync(Request request, String provider) {
+    return sharedRequests.execute(toSharedKey(request, provider), () -> requestAsync(request, provider));
+  }
+
+  /**
+   * provider, method, url 과 header / body 의 hash 로 key 를 만든다. <p>
+   * 인증 header 가 다른 요청끼리 결과를 나눠 갖지 않도록 header 도 포함한다.
+   */
+  private static String toSharedKey(Request request, String provider) {
+    Buffer content = new Buffer();
+    content.writeUtf8(request.headers().toString());
+
+    RequestBody body = request.body();
+    if (null != body) {
+      try {
+        body.writeTo(content);
+      } catch (IOException e) {
+        // body 를 읽을 수 없으면 공유하지 않는다.
+        content.writeUtf8(String.valueOf(System.identityHashCode(request)));
+      }
+    }
+
+    return provider + ' ' + request.method() + ' ' + request.url() + ' ' + content.sha256().hex();
+  }
+
+  /**
+   * 응답 body 를 문자열로 만들지 않고, stream 위의 JsonParser 를 handler 에 넘긴다. <p>
+   * 큰 응답도 handler 가 읽는 만큼만 memory 에 올라온다. rate limit / 동시 요청 제한은 requestBy 와 같다.
+   *
+   * @return handler 의 결과. 요청이나 parsing 이 실패하면 null
+   */
+  public static <T> T requestStreaming(Request request, String provider, JsonStreamHandler<T> handler) {
+
+    ProviderPermits permits = acquirePermit(provider);
+    if (null == permits) {
+      return null;
+    }
+
+    try {
+      checkReqLimit(provider);
+
+      try (Response response = executeWithRetry(request, provider)) {
+        if (!response.isSuccessful() && response.code() != 304) {
+          log.info("fail to get Response. Reqeuset isSuccessful ? : {} to {}", response.isSuccessful(), provider);
+          return null;
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser(response.body().byteStream())) {
+          return handler.handle(parser);
+        }
+      } catch (IOException e) {
+        log.error("okHttpClient streaming request to {} occur Exception ==> " + request.url(), provider, e);
+        return null;
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * provider 의 동시 요청 자리를 잡는다. token 을 받고 나서 자리를 기다리면 token 이 낭비되므로, 자리부터 잡는다.
+   *
+   * @return 잡은 permit. 기다리다 interrupt 되면 null
+   */
+  private static ProviderPermits acquirePermit(String provider) {
+    ProviderPermits permits = executionThreads.permitsOf(provider);
+    try {
+      permits.acquire();
+      return permits;
+    } catch (InterruptedException e) {
+      log.error("While waiting concurrent request permit of {}, interrupted", provider, e);
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
 
+  private static String execute(Request request, String provider) {
     String result = null;
     Response response = null;
     try {
-      response = client.newCall(request).execute();
-      if (response.isSuccessful() || response.code() == 304) { // response code 200..299 / 304 (caching)
-        result = response.body().string();
-      } else {
-        // 실패할 경우 일단 로그만 남긴다.
-        log.info("fail to get Response. Reqeuset isSuccessful ? : {} to {}", response.isSuccessful(),
-            provider);
-      }
+      response = executeWithRetry(request, provider);
+      result = readBody(response, provider);
     } catch (SocketTimeoutException e) {
       log.error("okHttpClient reqeust fail to SoketTimeout Exception ==> " + request.body(), e);
     } catch (IOException e) {
@@ -51,19 +185,135 @@ public class HttpRequestUtils {
   }
 
   /**
-   * RateLimitRule 에 따라 limiter에 해당 provider 를 등록 및 limit 체크한다.
+   * 429 를 받으면 backoff 후 token 을 다시 받아서 최대 {@link RateLimitInterceptor#MAX_RETRY} 번 다시 요청한다. <p>
+   * 호출한 thread 에서 기다린다. ( dispatcher thread 를 붙잡지 않는다 )
    */
-  public static void checkReqLimit(String provider) {
-
-    while (!rateLimit.checkRateLimitBy(provider)) {
+  private static Response executeWithRetry(Request request, String provider) throws IOException {
+    Request prepared = prepare(request, provider);
+    Response response = client.newCall(prepared).execute();
 
+    for (int attempt = 0; RateLimitInterceptor.isThrottled(response) && attempt < RateLimitInterceptor.MAX_RETRY; attempt++) {
+      response.close();
       try {
-        log.info("{} has limited so wait 100 millis", provider);
-        Thread.sleep(100);
+        Thread.sleep(RateLimitInterceptor.retryBackoffMillis(attempt));
       } catch (InterruptedException e) {
-        log.error("While Checking rateLimit, try thread sleep and occur exception", e);
         Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting rate limit retry");
+      }
+      checkReqLimit(provider); // Retry-After 가 끝나고 token 이 생길 때까지 기다린다.
+
+      response = client.newCall(prepared).execute();
+    }
+    return response;
+  }
+
+  /**
+   * {@link #requestBy(Request, String)} 의 non-blocking 버전. <p>
+   * 동시 요청 자리와 rate limit token 을 기다리는 동안에도, 응답을 기다리는 동안에도 호출한 thread 를 붙잡지 않는다. <p>
+   * 실패하면 requestBy 와 마찬가지로 null 로 완료된다. <p>
+   * virtual thread 모드면 requestBy 를 virtual thread 에서 돌린다. ( 기다리는 동안 virtual thread 만 멈춘다 )
+   */
+  public static CompletableFuture<String> requestAsync(Request request, String provider) {
+    ExecutorService ioExecutor = executionThreads.getIoExecutor();
+    if (null != ioExecutor) {
+      return CompletableFuture.supplyAsync(() -> requestBy(request, provider), ioExecutor);
+    }
+
+    // requestBy 와 같은 순서로 자리부터 잡고 token 을 받는다. 자리는 응답을 다 읽은 뒤에 돌려준다.
+    ProviderPermits permits = executionThreads.permitsOf(provider);
+    return permits.acquireAsync()
+        .thenCompose(permit -> rateLimiter.acquire(provider))
+        .thenCompose(token -> enqueue(prepare(request, provider), provider, 0))
+        .whenComplete((body, e) -> permits.release());
+  }
+
+  /**
+   * 429 를 받으면 dispatcher thread 에서 기다리지 않고, timer 로 backoff 후 token 을 다시 받아서 보낸다.
+   */
+  private static CompletableFuture<String> enqueue(Request request, String provider, int attempt) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+
+    client.newCall(request).enqueue(new Callback() {
+      @Override
+      public void onFailure(Call call, IOException e) {
+        log.error("okHttpClient async request to {} occur Exception ==> " + request.body(), provider, e);
+        result.complete(null);
+      }
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        if (RateLimitInterceptor.isThrottled(response) && attempt < RateLimitInterceptor.MAX_RETRY) {
+          response.close();
+          Executor afterBackoff = CompletableFuture.delayedExecutor(
+              RateLimitInterceptor.retryBackoffMillis(attempt), TimeUnit.MILLISECONDS);
+          CompletableFuture.runAsync(() -> { }, afterBackoff)
+              .thenCompose(ignored -> rateLimiter.acquire(provider))
+              .thenCompose(token -> enqueue(request, provider, attempt + 1))
+              .whenComplete((body, e) -> result.complete(null == e ? body : null));
+          return;
+        }
+
+        try {
+          result.complete(readBody(response, provider));
+        } catch (IOException e) {
+          log.error("okHttpClient async request fail to read body from {}", provider, e);
+          result.complete(null);
+        } finally {
+          response.close();
+        }
       }
+    });
+
+    return result;
+  }
+
+  /**
+   * 응답에 따라 provider 의 rate 가 조절되도록 provider 를 붙이고, 조건부 요청이 되도록 한다.
+   */
+  private static Request prepare(Request request, String provider) {
+    return revalidate(RateLimitInterceptor.withProvider(request, provider));
+  }
+
+  /**
+   * cache 정책을 따로 주지 않은 GET 요청은, cache 가 아직 fresh 하더라도 provider 에 변경 여부를 확인하게 한다. <p>
+   * ( no-cache 를 주면 okhttp 는 cache 를 아예 건너뛰므로 max-age=0 을 쓴다. )
+   */
+  private static Request revalidate(Request request) {
+    if (!"GET".equals(request.method()) || null != request.header("Cache-Control")) {
+      return request;
+    }
+    return request.newBuilder().cacheControl(REVALIDATE).build();
+  }
+
+  private static String readBody(Response response, String provider) throws IOException {
+    if (response.isSuccessful() || response.code() == 304) { // response code 200..299 / 304 (caching)
+      if (null != response.cacheResponse()) {
+        // provider 가 304 를 주면 okhttp 가 cache 된 body 로 응답을 만들어준다.
+        log.debug("serve cached response of {}. revalidated: {}", provider, null != response.networkResponse());
+      }
+      return response.body().string();
+    }
+    // 실패할 경우 일단 로그만 남긴다.
+    log.info("fail to get Response. Reqeuset isSuccessful ? : {} to {}", response.isSuccessful(),
+        provider);
+    return null;
+  }
+
+  /**
+   * RateLimitRule 에 따라 limiter에 해당 provider 를 등록 및 limit 체크한다. <p>
+   * token 이 생기는 시점까지 정확히 기다린다. ( 대기 순서는 {@link AsyncRateLimiter} 의 FIFO 를 따른다 )
+   */
+  public static void checkReqLimit(String provider) {
+
+    CompletableFuture<Void> permit = rateLimiter.acquire(provider);
+    try {
+      permit.get();
+    } catch (InterruptedException e) {
+      log.error("While Checking rateLimit, waiting token and occur exception", e);
+      permit.cancel(false);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.error("While Checking rateLimit, waiting token and occur exception", e);
     }
   }
 }
@@ -0,0 +1,18 @@
+package com.devtaco.distribute.util;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * 응답 body 를 문자열로 만들지 않고, stream 위의 JsonParser 로 바로 읽는 handler. <p>
+ * {@link HttpRequestUtils#requestStreaming(okhttp3.Request, String, JsonStreamHandler)} 에서 사용한다. <p>
+ * parser 는 handler 가 끝나면 닫히므로, handler 밖으로 넘기지 않는다.
+ *
+ * @param <T> 읽은 결과
+ */
+@FunctionalInterface
+public interface JsonStreamHandler<T> {
+
+  T handle(JsonParser parser) throws IOException;
+}
@@ -0,0 +1,84 @@
+package com.devtaco.distribute.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * provider 하나의 동시 요청 permit. <p>
+ * blocking 요청( {@link #acquire()} ) 과 async 요청( {@link #acquireAsync()} ) 이 같은 개수를 나눠 쓴다. <p>
+ * 먼저 기다린 쪽이 먼저 받는다. ( FIFO )
+ */
+public class ProviderPermits {
+
+  private final int maxPermits;
+
+  private int available;
+
+  private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+  public ProviderPermits(int maxPermits) {
+    this.maxPermits = Math.max(1, maxPermits);
+    this.available = this.maxPermits;
+  }
+
+  /**
+   * permit 을 얻으면 완료되는 future. 기다리지 않게 되면 취소한다.
+   */
+  public CompletableFuture<Void> acquireAsync() {
+    synchronized (this) {
+      if (available > 0 && waiters.isEmpty()) {
+        available--;
+        return CompletableFuture.completedFuture(null);
+      }
+      CompletableFuture<Void> waiter = new CompletableFuture<>();
+      waiters.addLast(waiter);
+      return waiter;
+    }
+  }
+
+  /**
+   * permit 을 얻을 때까지 기다린다.
+   */
+  public void acquire() throws InterruptedException {
+    CompletableFuture<Void> waiter = acquireAsync();
+    try {
+      waiter.get();
+    } catch (InterruptedException e) {
+      // 취소하기 전에 permit 을 받았으면 돌려준다.
+      if (!waiter.cancel(false)) {
+        release();
+      }
+      throw e;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * 기다리는 쪽이 있으면 바로 넘겨준다. 넘겨받은 쪽의 callback 은 이 thread 에서 돈다.
+   */
+  public void release() {
+    CompletableFuture<Void> next;
+    synchronized (this) {
+      while (null != (next = waiters.pollFirst())) {
+        if (!next.isDone()) {
+          break;
+        }
+      }
+      if (null == next) {
+        available = Math.min(maxPermits, available + 1);
+        return;
+      }
+    }
+
+    if (!next.complete(null)) {
+      // 넘겨주는 사이에 취소됨
+      release();
+    }
+  }
+
+  public synchronized int getAvailable() {
+    return available;
+  }
+}
@@ -1,42 +1,161 @@
 package com.devtaco.distribute.util;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.devtaco.distribute.config.RateLimitRuleConfig;
 
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Interceptor;
+import okhttp3.Request;
 import okhttp3.Response;
 
 /**
  * OkHttpClient 에 attach 할 RateLimit 적용 Interceptor. <p>
- * bucket 을 체크하는 건 아니다. <p>
+ * bucket 을 체크하는 건 아니다. 응답을 보고 provider 의 rate 를 조절한다. ( {@link RateLimitRuleConfig} ) <p>
+ * - 429 : rate 를 줄이고, Retry-After 동안 provider 의 token 을 멈춘다. 줄인 뒤에 보낸 요청의 429 만 다시 줄인다. <p>
+ * - 성공 : rate 를 늘릴 근거로 쓰고, 남은 quota 가 0 이라는 header 가 있으면 reset 까지 멈춘다. <p>
+ * async 요청에서는 dispatcher thread 위에서 돌기 때문에 여기서는 기다리지 않는다. <p>
+ * 다시 요청하는 것은 {@link HttpRequestUtils} 가 호출한 thread 나 timer 에서 한다. ( {@link #MAX_RETRY}, {@link #retryBackoffMillis(int)} ) <p>
+ * provider 는 {@link #withProvider(Request, String)} 로 request 에 붙인다.
  */
 @Slf4j
 public class RateLimitInterceptor implements Interceptor {
 
+  private static final int TOO_MANY_REQUESTS = 429;
+
+  /** 429 를 받았을 때 다시 요청하는 최대 횟수 */
+  public static final int MAX_RETRY = 3;
+
+  private static final long BASE_BACKOFF_MILLIS = 500L;
+  private static final long MAX_BACKOFF_MILLIS = 30_000L;
+
+  /** reset header 값이 이보다 크면 epoch seconds, 작으면 남은 seconds 로 본다. */
+  private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+  /** request 에 붙이는 provider 이름 */
+  private static final class ProviderTag {
+    private final String name;
+
+    private ProviderTag(String name) {
+      this.name = name;
+    }
+  }
+
   private static RateLimitInterceptor instance = new RateLimitInterceptor();
   
   public static RateLimitInterceptor getInstance() {
     return instance;
   }
 
+  private final RateLimitRuleConfig rateLimit = RateLimitRuleConfig.getInstance();
+
+  /**
+   * request 에 provider 를 붙인다. 응답에 따라 이 provider 의 rate 가 조절된다.
+   */
+  public static Request withProvider(Request request, String provider) {
+    return request.newBuilder().tag(ProviderTag.class, new ProviderTag(provider)).build();
+  }
+
   @Override
   public Response intercept(Chain chain) throws IOException {
 
-    Response response = chain.proceed(chain.request());
+    Request request = chain.request();
+    ProviderTag tag = request.tag(ProviderTag.class);
+    String provider = null == tag ? null : tag.name;
+
+    long sentAtNanos = System.nanoTime();
+    Response response = chain.proceed(request);
+    if (null == provider) {
+      return response;
+    }
+
+    // 429 code ==> too many request. Retry-After 가 끝날 때까지 이 provider 의 token 을 주지 않는다.
+    if (isThrottled(response)) {
+      long retryAfterMillis = parseRetryAfterMillis(response);
+      log.info("{} is over rate limit, retry after {} ms ... {}", provider, retryAfterMillis, request.url());
+      rateLimit.onThrottled(provider, sentAtNanos, TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+      return response;
+    }
+
+    if (response.isSuccessful() || 304 == response.code()) {
+      rateLimit.onSuccess(provider);
+      pauseIfQuotaExhausted(response, provider);
+    }
+    return response;
+  }
+
+  /**
+   * Retry-After 는 seconds 이거나 HTTP date 이다.
+   *
+   * @return 기다려야 하는 시간(ms). header 가 없거나 읽을 수 없으면 0
+   */
+  private static long parseRetryAfterMillis(Response response) {
+    String retryAfter = response.header("Retry-After");
+    if (null == retryAfter) {
+      return 0L;
+    }
+
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0L, Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException e) {
+      Date date = response.headers().getDate("Retry-After");
+      return null == date ? 0L : Math.max(0L, date.getTime() - System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * X-RateLimit-Remaining( 또는 RateLimit-Remaining ) 이 0 이면 Reset 까지 token 을 주지 않는다.
+   */
+  private void pauseIfQuotaExhausted(Response response, String provider) {
+    Long remaining = parseLongHeader(response, "X-RateLimit-Remaining", "RateLimit-Remaining");
+    if (null == remaining || remaining > 0) {
+      return;
+    }
+
+    Long reset = parseLongHeader(response, "X-RateLimit-Reset", "RateLimit-Reset");
+    if (null == reset) {
+      return;
+    }
 
-    // 429 code ==> too many request
-    if (!response.isSuccessful() && response.code() == 429 ) {
-      // wait & retry
+    long resetMillis = reset > EPOCH_SECONDS_THRESHOLD
+        ? TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis()
+        : TimeUnit.SECONDS.toMillis(reset);
+    if (resetMillis > 0) {
+      log.info("{} quota exhausted, pause {} ms", provider, resetMillis);
+      rateLimit.pause(provider, TimeUnit.MILLISECONDS.toNanos(resetMillis));
+    }
+  }
+
+  private static Long parseLongHeader(Response response, String... names) {
+    for (String name : names) {
+      String value = response.header(name);
+      if (null == value) {
+        continue;
+      }
       try {
-        log.info("{} is over rate limit,  wait and retry... {}", response.request().url().toString());
-        response.close();
-        Thread.sleep( 1000L ); // 1초가 지나면, RateLimit Bucket 의 token 도 초기화 된다.
-      } catch ( InterruptedException e) {
-        Thread.currentThread().interrupt();
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        return null;
       }
-      response = chain.proceed(chain.request());
     }
-    return response;
+    return null;
+  }
+
+  public static boolean isThrottled(Response response) {
+    return TOO_MANY_REQUESTS == response.code();
+  }
+
+  /**
+   * 다시 요청하기 전에 기다릴 시간. 여러 job 이 동시에 다시 요청하지 않도록 흩어준다. <p>
+   * Retry-After 는 provider 의 token 을 멈추는 것으로 지키므로, 이 시간이 지난 뒤 token 을 다시 받아야 한다. <p>
+   * full jitter : 0 ~ min(MAX, BASE * 2^attempt) 사이의 임의의 시간
+   */
+  public static long retryBackoffMillis(int attempt) {
+    long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
   }
 
 }
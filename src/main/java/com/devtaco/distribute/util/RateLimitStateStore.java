@@ -0,0 +1,102 @@
+package com.devtaco.distribute.util;
+
+import static okhttp3.internal.Util.threadFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * provider 별로 학습한 rate( 초당 요청 수 ) 를 file 에 저장해두고, 재시작할 때 다시 읽는다. <p>
+ * rate 가 바뀔 때만 쓰므로 자주 쓰지 않는다. 쓰는 도중에 죽어도 이전 file 이 깨지지 않도록 임시 file 에 쓰고 바꿔치기 한다. <p>
+ * rate 는 요청을 처리하는 thread 에서 바뀌므로, {@link #saveAsync(Supplier)} 로 별도 thread 에서 쓴다.
+ */
+@Slf4j
+public class RateLimitStateStore {
+
+  private final Path file;
+
+  private final ExecutorService saveExecutor =
+      Executors.newSingleThreadExecutor(threadFactory("rate-limit-state-save", true));
+
+  /** 아직 쓰지 않은 저장 요청이 있는지. 여러 번 바뀌어도 마지막 상태 한 번만 쓴다. */
+  private final AtomicBoolean savePending = new AtomicBoolean();
+
+  public RateLimitStateStore(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * @return provider -> rate. file 이 없거나 읽을 수 없으면 빈 map
+   */
+  public Map<String, Integer> load() {
+    Map<String, Integer> rates = new HashMap<>();
+    if (!Files.exists(file)) {
+      return rates;
+    }
+
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    } catch (IOException e) {
+      log.warn("fail to load rate limit state from {}", file, e);
+      return rates;
+    }
+
+    for (String provider : properties.stringPropertyNames()) {
+      try {
+        rates.put(provider, Integer.parseInt(properties.getProperty(provider).trim()));
+      } catch (NumberFormatException e) {
+        log.warn("ignore invalid rate of {} : {}", provider, properties.getProperty(provider));
+      }
+    }
+    return rates;
+  }
+
+  /**
+   * 별도 thread 에서 저장한다. 밀린 저장 요청이 있으면 합쳐서, 쓰는 시점의 snapshot 을 한 번만 쓴다.
+   *
+   * @param snapshot 저장할 provider -> rate 를 만든다. 저장하는 thread 에서 호출한다.
+   */
+  public void saveAsync(Supplier<Map<String, Integer>> snapshot) {
+    if (!savePending.compareAndSet(false, true)) {
+      return;
+    }
+    saveExecutor.execute(() -> {
+      savePending.set(false);
+      save(snapshot.get());
+    });
+  }
+
+  public synchronized void save(Map<String, Integer> rates) {
+    Properties properties = new Properties();
+    for (Map.Entry<String, Integer> entry : rates.entrySet()) {
+      properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+    }
+
+    try {
+      Path dir = file.toAbsolutePath().getParent();
+      Files.createDirectories(dir);
+      Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        properties.store(writer, "learned rate limit ( requests per second ) by provider");
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("fail to save rate limit state to {}", file, e);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.devtaco.distribute.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 같은 key 의 작업이 동시에 여러 번 요청되면, 실제로는 한 번만 수행하고 그 결과를 모두에게 나눠준다. <p>
+ * ttl 을 주면 끝난 결과를 그 시간 동안 보관해서, 조금 늦게 들어온 같은 요청도 결과를 재사용한다. <p>
+ * null 결과나 실패는 보관하지 않는다.
+ *
+ * @param <K> 작업을 구분하는 key. equals / hashCode 가 정의되어 있어야 한다.
+ * @param <V> 작업 결과
+ */
+public class SingleFlight<K, V> {
+
+  /** ttl 동안 보관하는 결과 */
+  private static class Completed<V> {
+    private final V value;
+    private final long expireAtNanos;
+
+    Completed(V value, long expireAtNanos) {
+      this.value = value;
+      this.expireAtNanos = expireAtNanos;
+    }
+
+    boolean isExpired(long now) {
+      return now - expireAtNanos >= 0;
+    }
+  }
+
+  private final long ttlNanos;
+
+  /** key -> 수행 중인 작업 */
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /** key -> 최근에 끝난 결과 ( ttl 이 0 이면 사용하지 않음 ) */
+  private final ConcurrentHashMap<K, Completed<V>> recent = new ConcurrentHashMap<>();
+
+  /**
+   * @param ttlMillis 끝난 결과를 재사용할 시간. 0 이면 수행 중인 작업만 공유한다.
+   */
+  public SingleFlight(long ttlMillis) {
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ttlMillis));
+  }
+
+  /**
+   * 같은 key 의 작업이 수행 중이면 그 결과를 기다리고, 없으면 call 로 새로 시작한다.
+   *
+   * @param call 실제 작업. 먼저 온 호출자의 thread 에서 호출된다.
+   * @return 작업 결과로 완료되는 future. 호출자마다 별도의 future 라서 취소해도 다른 호출자에게는 영향이 없다.
+   */
+  public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+    if (ttlNanos > 0) {
+      Completed<V> completed = recent.get(key);
+      if (null != completed) {
+        if (!completed.isExpired(System.nanoTime())) {
+          return CompletableFuture.completedFuture(completed.value);
+        }
+        recent.remove(key, completed);
+      }
+    }
+
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+    if (null != existing) {
+      return existing.thenApply(value -> value);
+    }
+
+    CompletableFuture<V> result;
+    try {
+      result = call.get();
+    } catch (RuntimeException e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+
+    result.whenComplete((value, error) -> {
+      // inFlight 에서 빼기 전에 보관해야, 그 사이에 들어온 요청이 다시 수행하지 않는다.
+      if (ttlNanos > 0 && null == error && null != value) {
+        pruneExpired();
+        recent.put(key, new Completed<>(value, System.nanoTime() + ttlNanos));
+      }
+      inFlight.remove(key, flight);
+
+      if (null == error) {
+        flight.complete(value);
+      } else {
+        flight.completeExceptionally(error);
+      }
+    });
+    return flight.thenApply(value -> value);
+  }
+
+  /**
+   * @return 지금 수행 중인 작업 수
+   */
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+
+  private void pruneExpired() {
+    long now = System.nanoTime();
+    recent.values().removeIf(completed -> completed.isExpired(now));
+  }
+}
@@ -0,0 +1,115 @@
+package com.devtaco.distribute.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.devtaco.distribute.model.SourceData;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * provider 응답의 배열을 한 원소씩 읽어서 key 별 {@link SourceData} 로 모은다. <p>
+ * [ {"key": "A", "source": "s1", "weight": 1.5}, ... ] 형태를 읽는다. field 이름은 생성할 때 정한다. <p>
+ * 원소 하나를 읽는 즉시 가중치를 더하므로, 응답 전체를 memory 에 올리지 않는다. 결과는 ImplValue.sourceClassifyByKey 에 넣는다. <p>
+ * 소스 이름은 key 별로 중복 없이 한 번씩만 남긴다. 그래서 memory 는 응답 크기가 아니라 ( key, 소스 ) 의 종류 수만큼 쓴다.
+ */
+public class SourceDataStreamReader implements JsonStreamHandler<Map<String, SourceData>> {
+
+  private final String keyField;
+  private final String weightField;
+  private final String sourceField;
+
+  /** fixed point 모드의 scale. BigDecimal 모드이면 -1 */
+  private final int scale;
+
+  /**
+   * @param sourceField 소스 이름 field. 없으면 null
+   * @param scale       fixed point 모드의 scale. BigDecimal 모드이면 -1
+   */
+  public SourceDataStreamReader(String keyField, String weightField, String sourceField, int scale) {
+    this.keyField = keyField;
+    this.weightField = weightField;
+    this.sourceField = sourceField;
+    this.scale = scale;
+  }
+
+  /**
+   * @throws IOException 배열이 아니거나, 원소에 key / weight 가 없는 경우
+   */
+  @Override
+  public Map<String, SourceData> handle(JsonParser parser) throws IOException {
+    Map<String, SourceData> sourceByKey = new HashMap<>();
+    Map<String, Set<String>> seenSourcesByKey = new HashMap<>();
+
+    if (JsonToken.START_ARRAY != parser.nextToken()) {
+      throw new IOException("source data must be json array but " + parser.currentToken());
+    }
+
+    while (JsonToken.START_OBJECT == parser.nextToken()) {
+      readElement(parser, sourceByKey, seenSourcesByKey);
+    }
+
+    if (JsonToken.END_ARRAY != parser.currentToken()) {
+      throw new IOException("unexpected token in source data array: " + parser.currentToken());
+    }
+    return sourceByKey;
+  }
+
+  private void readElement(JsonParser parser, Map<String, SourceData> sourceByKey,
+      Map<String, Set<String>> seenSourcesByKey) throws IOException {
+    String key = null;
+    BigDecimal weight = null;
+    String source = null;
+
+    while (JsonToken.FIELD_NAME == parser.nextToken()) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+
+      if (keyField.equals(field)) {
+        key = parser.getValueAsString();
+      } else if (weightField.equals(field)) {
+        weight = readDecimal(parser, value);
+      } else if (null != sourceField && sourceField.equals(field)) {
+        source = parser.getValueAsString();
+      } else {
+        parser.skipChildren(); // 쓰지 않는 field. object / array 면 통째로 건너뛴다.
+      }
+    }
+
+    if (null == key || null == weight) {
+      throw new IOException("source data element needs " + keyField + " and " + weightField);
+    }
+
+    SourceData sourceData = sourceByKey.computeIfAbsent(key, k -> scale >= 0 ? new SourceData(scale) : new SourceData());
+    try {
+      sourceData.addWeight(weight);
+    } catch (ArithmeticException e) { // scale 보다 자리수가 많거나 overflow
+      throw new IOException("fail to add weight " + weight + " of " + key, e);
+    }
+    // 같은 소스가 여러 번 와도 목록에는 한 번만 넣는다.
+    if (null != source && seenSourcesByKey.computeIfAbsent(key, k -> new HashSet<>()).add(source)) {
+      sourceData.getSourceList().add(source);
+    }
+  }
+
+  /**
+   * 숫자는 double 을 거치지 않고 바로 BigDecimal 로 읽는다. 문자열로 온 숫자도 받는다.
+   */
+  private static BigDecimal readDecimal(JsonParser parser, JsonToken value) throws IOException {
+    if (JsonToken.VALUE_NUMBER_INT == value || JsonToken.VALUE_NUMBER_FLOAT == value) {
+      return parser.getDecimalValue();
+    }
+    if (JsonToken.VALUE_STRING == value) {
+      try {
+        return new BigDecimal(parser.getText());
+      } catch (NumberFormatException e) {
+        throw new IOException("weight is not a number: " + parser.getText(), e);
+      }
+    }
+    throw new IOException("weight is not a number: " + value);
+  }
+}
@@ -0,0 +1,54 @@
+package com.devtaco.distribute.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 한 번에 몰린 요청들이 같이 429 를 받아도 rate 를 한 번만 줄이는지 확인한다.
+ */
+class RateLimitRuleConfigTest {
+
+  private static RateLimitRuleConfig rateLimit;
+
+  @BeforeAll
+  static void init() throws IOException {
+    Path stateFile = Files.createTempDirectory("rate-limit-test").resolve("rate-limits.properties");
+    rateLimit = new RateLimitRuleConfig(stateFile);
+  }
+
+  @Test
+  void burstOf429DecreasesOnce() {
+    String provider = "burst";
+    rateLimit.addLimiter(provider);
+    long sentAtNanos = System.nanoTime();
+
+    for (int i = 0; i < 5; i++) {
+      rateLimit.onThrottled(provider, sentAtNanos, 0L);
+    }
+    assertEquals(5, rateLimit.getRatePerSec(provider));
+
+    // 줄인 뒤에 보낸 요청이 다시 429 를 받으면 또 줄인다.
+    rateLimit.onThrottled(provider, System.nanoTime(), 0L);
+    assertEquals(2, rateLimit.getRatePerSec(provider));
+  }
+
+  @Test
+  void throttledStillPausesWithoutDecrease() {
+    String provider = "pause";
+    rateLimit.addLimiter(provider);
+    long sentAtNanos = System.nanoTime();
+    rateLimit.onThrottled(provider, sentAtNanos, 0L);
+
+    rateLimit.onThrottled(provider, sentAtNanos, 60_000_000_000L);
+
+    assertEquals(5, rateLimit.getRatePerSec(provider));
+    assertTrue(rateLimit.getPausedNanos(provider) > 0);
+  }
+}
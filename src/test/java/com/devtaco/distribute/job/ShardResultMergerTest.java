@@ -0,0 +1,128 @@
+package com.devtaco.distribute.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.shardingsphere.elasticjob.reg.zookeeper.ZookeeperConfiguration;
+import org.apache.shardingsphere.elasticjob.reg.zookeeper.ZookeeperRegistryCenter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.zk.EmbedZookeeperServer;
+
+/**
+ * 여러 shard 의 부분 결과가 회차별로 모이고, 마지막 shard 하나만 merge 하는지 확인한다.
+ */
+class ShardResultMergerTest {
+
+  private static final long TICK = 1_704_067_200_000L;
+
+  private static ZookeeperRegistryCenter regCenter;
+  private static ShardResultMerger merger;
+
+  @BeforeAll
+  static void start() throws IOException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    EmbedZookeeperServer.start(port);
+
+    regCenter = new ZookeeperRegistryCenter(new ZookeeperConfiguration("localhost:" + port, "shard-merger-test"));
+    regCenter.init();
+    merger = new ShardResultMerger(regCenter);
+  }
+
+  @AfterAll
+  static void close() {
+    regCenter.close();
+  }
+
+  @Test
+  void lastShardMergesAllPartials() {
+    assertFalse(merger.submit("last-shard", TICK, 0, 3, new BigDecimal("1")).isPresent());
+    assertFalse(merger.submit("last-shard", TICK, 1, 3, new BigDecimal("2")).isPresent());
+
+    Optional<List<BigDecimal>> merged = merger.submit("last-shard", TICK, 2, 3, new BigDecimal("3"));
+
+    assertTrue(merged.isPresent());
+    assertEquals(new BigDecimal("6"), sum(merged.get()));
+    assertFalse(regCenter.isExisted("/last-shard/partials/" + TICK));
+  }
+
+  @Test
+  void ticksDoNotMix() {
+    assertFalse(merger.submit("ticks", TICK, 0, 2, new BigDecimal("1")).isPresent());
+    assertFalse(merger.submit("ticks", TICK + 60_000L, 0, 2, new BigDecimal("10")).isPresent());
+
+    Optional<List<BigDecimal>> next = merger.submit("ticks", TICK + 60_000L, 1, 2, new BigDecimal("20"));
+    Optional<List<BigDecimal>> first = merger.submit("ticks", TICK, 1, 2, new BigDecimal("2"));
+
+    assertEquals(new BigDecimal("30"), sum(next.orElseThrow()));
+    assertEquals(new BigDecimal("3"), sum(first.orElseThrow()));
+  }
+
+  @Test
+  void concurrentShardsClaimMergeOnce() throws Exception {
+    int shards = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(shards);
+    try {
+      for (int round = 0; round < 5; round++) {
+        long tick = TICK + round * 60_000L;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<List<BigDecimal>>>> futures = new ArrayList<>();
+        for (int item = 0; item < shards; item++) {
+          int shardingItem = item;
+          Callable<Optional<List<BigDecimal>>> submit = () -> {
+            start.await();
+            return merger.submit("concurrent", tick, shardingItem, shards, BigDecimal.ONE);
+          };
+          futures.add(executor.submit(submit));
+        }
+        start.countDown();
+
+        int claimed = 0;
+        for (Future<Optional<List<BigDecimal>>> future : futures) {
+          Optional<List<BigDecimal>> merged = future.get(10, TimeUnit.SECONDS);
+          if (merged.isPresent()) {
+            claimed++;
+            assertEquals(BigDecimal.valueOf(shards), sum(merged.get()));
+          }
+        }
+        assertEquals(1, claimed, "round " + round);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void mergeRemovesStaleTicks() {
+    long staleTick = TICK - TimeUnit.MINUTES.toMillis(30);
+    assertFalse(merger.submit("stale", staleTick, 0, 2, BigDecimal.ONE).isPresent());
+
+    merger.submit("stale", TICK, 0, 2, BigDecimal.ONE);
+    assertTrue(merger.submit("stale", TICK, 1, 2, BigDecimal.ONE).isPresent());
+
+    assertFalse(regCenter.isExisted("/stale/partials/" + staleTick));
+  }
+
+  private static BigDecimal sum(List<BigDecimal> values) {
+    return values.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+  }
+}
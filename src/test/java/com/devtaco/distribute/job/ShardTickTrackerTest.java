@@ -0,0 +1,52 @@
+package com.devtaco.distribute.job;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 한 주기 넘게 늦게 시작한 shard 실행을 다음 회차에 넣지 않는지 확인한다.
+ */
+class ShardTickTrackerTest {
+
+  private static final String EVERY_MINUTE = "0 * * * * ?";
+  private static final long MINUTE_MILLIS = 60_000L;
+
+  /** 2024-01-01T00:00:00Z */
+  private static final long TICK = 1_704_067_200_000L;
+
+  private final ShardTickTracker tracker = new ShardTickTracker();
+
+  @Test
+  void acceptsConsecutiveTicks() {
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK));
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK + MINUTE_MILLIS));
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK + 2 * MINUTE_MILLIS));
+  }
+
+  @Test
+  void dropsRunLateByMoreThanOnePeriod() {
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK));
+
+    // TICK + 1분 의 실행이 TICK + 2분 이 지나서 시작했다.
+    assertFalse(tracker.accept(EVERY_MINUTE, 0, TICK + 2 * MINUTE_MILLIS));
+
+    // 뒤따라 도는 TICK + 2분 의 제 실행과 그 다음 회차는 받는다.
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK + 2 * MINUTE_MILLIS));
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK + 3 * MINUTE_MILLIS));
+  }
+
+  @Test
+  void acceptsShardReturningAfterLongGap() {
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK));
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK + 10 * MINUTE_MILLIS));
+  }
+
+  @Test
+  void tracksShardsSeparately() {
+    assertTrue(tracker.accept(EVERY_MINUTE, 0, TICK));
+    assertTrue(tracker.accept(EVERY_MINUTE, 1, TICK + 2 * MINUTE_MILLIS));
+    assertFalse(tracker.accept(EVERY_MINUTE, 0, TICK + 2 * MINUTE_MILLIS));
+  }
+}
@@ -0,0 +1,99 @@
+package com.devtaco.distribute.repository;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.model.ImplSpec;
+import com.devtaco.distribute.model.ImplValue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 다른 node 가 저장한 값이 있을 때 마지막 값을 DB 와 다시 맞추는지 확인한다.
+ */
+class LastValueStoreTest {
+
+  private static final long MINUTE_MILLIS = 60_000L;
+
+  private final DataRepository dataRepo = mock(DataRepository.class);
+
+  private final LastValueStore store = new LastValueStore(dataRepo, mock(RecentValueStore.class),
+      mock(ImplValueWriteBuffer.class), new SimpleMeterRegistry());
+
+  private final ImplSpec spec = (ImplSpec) new ImplSpec(1, "value-1").setCronExpression("0 * * * * ?");
+
+  @AfterEach
+  void close() {
+    store.close();
+  }
+
+  @Test
+  void consecutiveTicksUseCachedValue() {
+    long tick = currentTick();
+
+    assertTrue(store.checkChanged(spec, value(tick, "10")));
+    assertFalse(store.checkChanged(spec, value(tick + MINUTE_MILLIS, "10")));
+    assertFalse(store.checkChanged(spec, value(tick + 2 * MINUTE_MILLIS, "10")));
+
+    // 처음 한 번만 DB 를 본다.
+    verify(dataRepo, times(1)).getLatestImplValue(1);
+  }
+
+  @Test
+  void skippedTickRechecksValueSavedElsewhere() {
+    long tick = currentTick();
+    assertTrue(store.checkChanged(spec, value(tick, "10")));
+
+    // 다음 두 회차는 다른 node 가 계산해서 20 을 저장했다.
+    when(dataRepo.getLatestImplValue(1)).thenReturn(List.of(value(tick + 2 * MINUTE_MILLIS, "20")));
+
+    // 다시 넘겨받은 회차에서 10 은 DB 의 20 과 다르므로 저장해야 한다.
+    assertTrue(store.checkChanged(spec, value(tick + 3 * MINUTE_MILLIS, "10")));
+    verify(dataRepo, times(2)).getLatestImplValue(1);
+  }
+
+  @Test
+  void recheckKeepsOwnNewerValue() {
+    long tick = currentTick();
+    assertTrue(store.checkChanged(spec, value(tick, "10")));
+
+    // DB 에는 아직 이전 회차의 값만 있다. ( 이 node 의 값은 write buffer 에 있음 )
+    when(dataRepo.getLatestImplValue(1)).thenReturn(List.of(value(tick - MINUTE_MILLIS, "5")));
+
+    assertFalse(store.checkChanged(spec, value(tick + 3 * MINUTE_MILLIS, "10")));
+  }
+
+  @Test
+  void invalidateForcesReload() {
+    long tick = currentTick();
+    assertTrue(store.checkChanged(spec, value(tick, "10")));
+
+    store.invalidate(1);
+    when(dataRepo.getLatestImplValue(1)).thenReturn(List.of(value(tick, "10")));
+
+    assertFalse(store.checkChanged(spec, value(tick + MINUTE_MILLIS, "10")));
+    verify(dataRepo, times(2)).getLatestImplValue(1);
+  }
+
+  private static long currentTick() {
+    long now = System.currentTimeMillis();
+    return now - now % MINUTE_MILLIS;
+  }
+
+  private static ImplValue value(long valueTsMillis, String value) {
+    ImplValue implValue = new ImplValue(1);
+    implValue.setValueTsMillis(valueTsMillis);
+    implValue.setValue(new BigDecimal(value));
+    return implValue;
+  }
+}
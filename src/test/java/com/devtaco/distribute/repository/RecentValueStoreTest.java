@@ -0,0 +1,162 @@
+package com.devtaco.distribute.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.config.RecentValueStoreConfig;
+import com.devtaco.distribute.model.ImplSpec;
+import com.devtaco.distribute.model.ImplValue;
+import com.devtaco.distribute.model.NumericMode;
+import com.devtaco.distribute.repository.RecentValueStore.RecordedValue;
+
+/**
+ * spec 별 ring 이 가득 찼을 때 오래된 값부터 덮어쓰고, 같은 회차의 값은 제자리에서 바꾸는지 확인한다.
+ */
+class RecentValueStoreTest {
+
+  private static final int CAPACITY = 3;
+
+  private final RecentValueStore store = newStore();
+
+  private final ImplSpec decimalSpec = new ImplSpec(1, "decimal");
+  private final ImplSpec fixedPointSpec = new ImplSpec(2, "fixed-point")
+      .setNumericMode(NumericMode.FIXED_POINT)
+      .setValueScale(2);
+
+  @Test
+  void wrapsAroundKeepingNewestValues() {
+    for (int ts = 1; ts <= 5; ts++) {
+      store.record(decimalSpec, value(1, ts, ts, String.valueOf(ts * 10)));
+    }
+
+    assertEquals(CAPACITY, store.size(1));
+    assertEquals(List.of("3:30", "4:40", "5:50"), points(1, 0L));
+    assertEquals(List.of("4:40", "5:50"), points(1, 4L));
+    assertEquals(new BigDecimal("50"), store.getLatest(1).getValue());
+  }
+
+  @Test
+  void sameTickOverwritesLastValue() {
+    store.record(decimalSpec, value(1, 1, 1, "10"));
+    store.record(decimalSpec, value(1, 2, 2, "20"));
+
+    // 같은 회차를 다시 계산한 값
+    store.record(decimalSpec, value(1, 2, 3, "25"));
+
+    assertEquals(2, store.size(1));
+    assertEquals(List.of("1:10", "2:25"), points(1, 0L));
+  }
+
+  @Test
+  void overwriteAfterWrapAround() {
+    for (int ts = 1; ts <= 4; ts++) {
+      store.record(decimalSpec, value(1, ts, ts, String.valueOf(ts * 10)));
+    }
+    store.record(decimalSpec, value(1, 4, 5, "45"));
+    store.record(decimalSpec, value(1, 5, 6, "50"));
+
+    assertEquals(List.of("3:30", "4:45", "5:50"), points(1, 0L));
+  }
+
+  @Test
+  void dropsOlderAndDuplicateValues() {
+    store.record(decimalSpec, value(1, 2, 2, "20"));
+    long version = store.getVersion(1);
+
+    store.record(decimalSpec, value(1, 1, 3, "10")); // 이전 회차
+    store.record(decimalSpec, value(1, 2, 2, "20")); // DB 에서 다시 읽은 같은 값
+
+    assertEquals(version, store.getVersion(1));
+    assertEquals(List.of("2:20"), points(1, 0L));
+  }
+
+  @Test
+  void fixedPointRingWrapsAround() {
+    for (int ts = 1; ts <= 4; ts++) {
+      store.record(fixedPointSpec, value(2, ts, ts, ts + ".25"));
+    }
+
+    assertEquals(List.of("2:2.25", "3:3.25", "4:4.25"), points(2, 0L));
+  }
+
+  @Test
+  void checksChangeAgainstPreviousTick() {
+    store.record(decimalSpec, value(1, 1, 1, "100"));
+    store.record(decimalSpec, value(1, 2, 2, "200"));
+
+    // 같은 회차의 값이 아니라 바로 앞 회차의 값과 비교한다.
+    assertTrue(store.isWithinChange(1, 2, new BigDecimal("105"), 0.1));
+    assertFalse(store.isWithinChange(1, 2, new BigDecimal("120"), 0.1));
+    assertTrue(store.isWithinChange(1, 3, new BigDecimal("210"), 0.1));
+    assertTrue(store.isWithinChange(1, 1, new BigDecimal("1000"), 0.1));
+  }
+
+  @Test
+  void allSinceReturnsEveryValueInVersionOrder() {
+    store.record(decimalSpec, value(1, 1, 1, "10"));
+    long after = store.getCurrentVersion();
+    store.record(fixedPointSpec, value(2, 1, 1, "1"));
+    store.record(decimalSpec, value(1, 2, 2, "20"));
+    store.record(fixedPointSpec, value(2, 2, 2, "2"));
+    store.record(decimalSpec, value(1, 3, 3, "30"));
+
+    List<RecordedValue> values = store.allSince(null, after, store.getCurrentVersion(), 10);
+
+    assertEquals(List.of("2:1", "1:20", "2:2", "1:30"), recorded(values));
+    assertNull(store.allSince(null, after, store.getCurrentVersion(), 3));
+    assertEquals(List.of("1:20", "1:30"), recorded(store.allSince(List.of(1), after, store.getCurrentVersion(), 10)));
+  }
+
+  @Test
+  void allSinceFailsWhenValuesWereEvicted() {
+    store.record(decimalSpec, value(1, 1, 1, "10"));
+    long after = store.getCurrentVersion();
+    for (int ts = 2; ts <= 4; ts++) {
+      store.record(decimalSpec, value(1, ts, ts, String.valueOf(ts * 10)));
+    }
+    // 아직 밀려난 값은 after 이전의 값뿐이다.
+    assertEquals(List.of("1:20", "1:30", "1:40"), recorded(store.allSince(null, after, store.getCurrentVersion(), 10)));
+
+    store.record(decimalSpec, value(1, 5, 5, "50"));
+    assertNull(store.allSince(null, after, store.getCurrentVersion(), 10));
+  }
+
+  private static List<String> recorded(List<RecordedValue> values) {
+    List<String> recorded = new ArrayList<>();
+    for (RecordedValue value : values) {
+      recorded.add(value.getId() + ":" + value.getValue().stripTrailingZeros().toPlainString());
+    }
+    return recorded;
+  }
+
+  private List<String> points(int id, long fromValueTsMillis) {
+    List<String> points = new ArrayList<>();
+    assertTrue(store.forEachRecent(id, fromValueTsMillis,
+        (valueTs, calculateTs, value) -> points.add(valueTs + ":" + value.stripTrailingZeros().toPlainString())));
+    return points;
+  }
+
+  private static RecentValueStore newStore() {
+    RecentValueStoreConfig config = new RecentValueStoreConfig();
+    config.setPointsPerSpec(CAPACITY);
+    config.setLoadOnStartup(false);
+    return new RecentValueStore(mock(DataRepository.class), config);
+  }
+
+  private static ImplValue value(int id, long valueTsMillis, long calculateTsMillis, String value) {
+    ImplValue implValue = new ImplValue(id);
+    implValue.setValueTsMillis(valueTsMillis);
+    implValue.setCalculateTsMillis(calculateTsMillis);
+    implValue.setValue(new BigDecimal(value));
+    return implValue;
+  }
+}
@@ -0,0 +1,44 @@
+package com.devtaco.distribute.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.model.ImplSpec;
+
+/**
+ * cache miss 로 읽은 spec 이 그 사이 갱신된 spec 을 덮어쓰지 않는지 확인한다.
+ */
+class SpecCacheTest {
+
+  private final SpecCache cache = new SpecCache();
+
+  @Test
+  void refreshedSpecWinsOverMissLoad() {
+    ImplSpec stale = new ImplSpec(1, "old-name");
+    ImplSpec refreshed = new ImplSpec(1, "new-name");
+
+    // miss 로 DB 를 읽는 사이 갱신 알림이 먼저 반영된 경우
+    cache.putAll(List.of(refreshed));
+    List<ImplSpec> cached = cache.putAllIfAbsent(List.of(stale));
+
+    assertSame(refreshed, cache.get(1));
+    assertSame(refreshed, cached.get(0));
+  }
+
+  @Test
+  void missLoadFillsAbsentSpecs() {
+    ImplSpec present = new ImplSpec(1, "present");
+    ImplSpec loaded = new ImplSpec(2, "loaded");
+    cache.putAll(List.of(present));
+
+    List<ImplSpec> cached = cache.putAllIfAbsent(List.of(new ImplSpec(1, "stale"), loaded));
+
+    assertEquals(List.of(present, loaded), cached);
+    assertSame(loaded, cache.get(2));
+    assertEquals(2, cache.size());
+  }
+}
@@ -0,0 +1,95 @@
+package com.devtaco.distribute.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.service.SpecUpdateListener.Operation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * id 별로 모은 spec 변경 알림이 최종 작업 하나로 줄어드는지 확인한다.
+ */
+class SpecChangeAggregatorTest {
+
+  private final SpecChangeAggregator aggregator = new SpecChangeAggregator(100L, 1000L);
+
+  @Test
+  void mergesOperationsPerId() {
+    aggregator.add(1, Operation.INSERT);
+    aggregator.add(1, Operation.UPDATE);
+
+    aggregator.add(2, Operation.UPDATE);
+    aggregator.add(2, Operation.DELETE);
+
+    aggregator.add(3, Operation.DELETE);
+    aggregator.add(3, Operation.INSERT);
+
+    aggregator.add(4, Operation.UPDATE);
+    aggregator.add(4, Operation.UPDATE);
+
+    assertEquals(Map.of(1, Operation.INSERT, 2, Operation.DELETE, 3, Operation.UPDATE, 4, Operation.UPDATE),
+        aggregator.drain());
+    assertTrue(aggregator.isEmpty());
+  }
+
+  @Test
+  void insertThenDeleteLeavesNothing() {
+    aggregator.add(1, Operation.INSERT);
+    aggregator.add(1, Operation.UPDATE);
+    aggregator.add(1, Operation.DELETE);
+
+    assertTrue(aggregator.isEmpty());
+    assertEquals(-1L, aggregator.millisUntilFlush());
+  }
+
+  @Test
+  void keepsArrivalOrder() {
+    aggregator.add(3, Operation.UPDATE);
+    aggregator.add(1, Operation.INSERT);
+    aggregator.add(2, Operation.DELETE);
+    aggregator.add(3, Operation.UPDATE);
+
+    assertEquals(List.of(3, 1, 2), List.copyOf(aggregator.drain().keySet()));
+  }
+
+  @Test
+  void parsesPayload() throws Exception {
+    aggregator.addPayload(new ObjectMapper(), "{\"id\": 7, \"operation\": \"UPDATE\"}");
+
+    assertEquals(Map.of(7, Operation.UPDATE), aggregator.drain());
+  }
+
+  @Test
+  void restoreKeepsFailedChangesBeforeNewOnes() {
+    aggregator.add(1, Operation.INSERT);
+    aggregator.add(2, Operation.UPDATE);
+    aggregator.add(3, Operation.INSERT);
+    Map<Integer, Operation> failed = aggregator.drain();
+
+    // 적용하는 사이 새로 들어온 알림
+    aggregator.add(2, Operation.DELETE);
+    aggregator.add(4, Operation.INSERT);
+
+    aggregator.restore(failed);
+
+    // 일부 적용되었을 수 있는 INSERT 는 UPDATE 로 되돌리고, 새 알림은 그 뒤에 합친다.
+    Map<Integer, Operation> restored = aggregator.drain();
+    assertEquals(List.of(1, 2, 3, 4), List.copyOf(restored.keySet()));
+    assertEquals(Map.of(1, Operation.UPDATE, 2, Operation.DELETE, 3, Operation.UPDATE, 4, Operation.INSERT),
+        restored);
+  }
+
+  @Test
+  void restoreWaitsQuietWindow() {
+    aggregator.add(1, Operation.UPDATE);
+    aggregator.restore(aggregator.drain());
+
+    long untilFlush = aggregator.millisUntilFlush();
+    assertTrue(untilFlush > 0 && untilFlush <= 100L, "until flush " + untilFlush);
+  }
+}
@@ -0,0 +1,108 @@
+package com.devtaco.distribute.service;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.config.RecentValueStoreConfig;
+import com.devtaco.distribute.config.ValueQueryConfig;
+import com.devtaco.distribute.model.ImplSpec;
+import com.devtaco.distribute.model.ImplValue;
+import com.devtaco.distribute.repository.DataManager;
+import com.devtaco.distribute.repository.DataRepository;
+import com.devtaco.distribute.repository.RecentValueStore;
+import com.devtaco.distribute.repository.SpecCache;
+
+/**
+ * 조회할 때 DB 를 다시 확인하는 횟수를 확인한다.
+ */
+class ValueQueryServiceTest {
+
+  private static final int SPEC_COUNT = 20;
+
+  private final DataManager dataManager = mock(DataManager.class);
+  private final RecentValueStore recentValueStore = newStore();
+  private final SpecCache specCache = new SpecCache();
+  private final List<ImplSpec> specs = new ArrayList<>();
+
+  ValueQueryServiceTest() {
+    for (int id = 1; id <= SPEC_COUNT; id++) {
+      specs.add(new ImplSpec(id, "value-" + id));
+    }
+    specCache.putAll(specs);
+    when(dataManager.getSpecCache()).thenReturn(specCache);
+    when(dataManager.getRecentValueStore()).thenReturn(recentValueStore);
+  }
+
+  @Test
+  void etagOfManyRefreshesInOneQuery() {
+    ValueQueryService service = newService(60_000L);
+    List<Integer> ids = ids();
+
+    service.etagOf(ids);
+    service.etagOf(ids);
+
+    verify(dataManager, times(1)).loadLatestValues(anyCollection());
+    verify(dataManager, never()).loadLatestValue(anyInt());
+  }
+
+  @Test
+  void latestOfManyRefreshesInOneQuery() {
+    newService(60_000L).getLatest(ids());
+
+    verify(dataManager, times(1)).loadLatestValues(anyCollection());
+    verify(dataManager, never()).loadLatestValue(anyInt());
+  }
+
+  @Test
+  void unchangedLocalValueSkipsRefresh() throws InterruptedException {
+    long refreshMillis = 100L;
+    ValueQueryService service = newService(refreshMillis);
+    ImplSpec spec = specs.get(0);
+    ImplValue value = new ImplValue(spec.getId());
+    value.setValueTsMillis(1L);
+    value.setCalculateTsMillis(1L);
+    value.setValue(BigDecimal.ONE);
+    recentValueStore.record(spec, value);
+    Thread.sleep(refreshMillis * 2);
+
+    // refreshMillis 전에 저장한 값이지만, 이 node 가 방금 같은 값으로 계산했다.
+    recentValueStore.markUnchanged(spec.getId());
+    service.etagOf(spec.getId());
+    verify(dataManager, never()).loadLatestValue(anyInt());
+
+    Thread.sleep(refreshMillis * 2);
+    service.etagOf(spec.getId());
+    verify(dataManager, times(1)).loadLatestValue(spec.getId());
+  }
+
+  private ValueQueryService newService(long dbRefreshMillis) {
+    ValueQueryConfig config = new ValueQueryConfig();
+    config.setDbRefreshMillis(dbRefreshMillis);
+    return new ValueQueryService(dataManager, config);
+  }
+
+  private static List<Integer> ids() {
+    List<Integer> ids = new ArrayList<>();
+    for (int id = 1; id <= SPEC_COUNT; id++) {
+      ids.add(id);
+    }
+    return ids;
+  }
+
+  private static RecentValueStore newStore() {
+    RecentValueStoreConfig config = new RecentValueStoreConfig();
+    config.setLoadOnStartup(false);
+    return new RecentValueStore(mock(DataRepository.class), config);
+  }
+}
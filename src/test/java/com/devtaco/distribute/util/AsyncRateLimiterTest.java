@@ -0,0 +1,73 @@
+package com.devtaco.distribute.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.config.RateLimitRuleConfig;
+
+/**
+ * 먼저 요청한 쪽이 먼저 token 을 받고, 기다리는 요청은 timer 가 깨워서 완료되는지 확인한다.
+ */
+class AsyncRateLimiterTest {
+
+  private static final int WAITERS = 5;
+
+  private final AsyncRateLimiter rateLimiter = AsyncRateLimiter.getInstance();
+
+  @Test
+  void grantsInRequestOrderWithoutFurtherCalls() throws Exception {
+    String provider = "async-fifo";
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RateLimitRuleConfig.getInstance().getRatePerSec(provider);
+
+    List<Integer> granted = new CopyOnWriteArrayList<>();
+    List<CompletableFuture<Void>> permits = new ArrayList<>();
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < WAITERS; i++) {
+      int order = i;
+      permits.add(rateLimiter.acquire(provider).thenRun(() -> granted.add(order)));
+    }
+
+    // 처음 하나 말고는 acquire 안에서 받지 못하고, timer 가 refill 시점에 깨워서 받는다.
+    CompletableFuture.allOf(permits.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+    assertEquals(List.of(0, 1, 2, 3, 4), granted);
+    assertTrue(System.nanoTime() - startNanos >= (WAITERS - 1) * intervalNanos * 9 / 10);
+  }
+
+  @Test
+  void cancelledWaiterIsSkipped() throws Exception {
+    String provider = "async-cancel";
+    CompletableFuture<Void> first = rateLimiter.acquire(provider);
+    CompletableFuture<Void> cancelled = rateLimiter.acquire(provider);
+    CompletableFuture<Void> last = rateLimiter.acquire(provider);
+
+    cancelled.cancel(true);
+
+    first.get(5, TimeUnit.SECONDS);
+    last.get(5, TimeUnit.SECONDS);
+    assertTrue(cancelled.isCancelled());
+  }
+
+  @Test
+  void pausedProviderWaitsUntilPauseEnds() throws Exception {
+    String provider = "async-pause";
+    long pauseNanos = TimeUnit.MILLISECONDS.toNanos(300);
+    RateLimitRuleConfig.getInstance().pause(provider, pauseNanos);
+
+    long startNanos = System.nanoTime();
+    CompletableFuture<Void> permit = rateLimiter.acquire(provider);
+    assertFalse(permit.isDone());
+
+    permit.get(5, TimeUnit.SECONDS);
+    assertTrue(System.nanoTime() - startNanos >= pauseNanos * 9 / 10);
+  }
+}
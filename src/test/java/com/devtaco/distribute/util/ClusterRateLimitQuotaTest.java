@@ -0,0 +1,151 @@
+package com.devtaco.distribute.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.devtaco.distribute.zk.EmbedZookeeperServer;
+
+/**
+ * 여러 node 의 ClusterRateLimitQuota 가 하나의 ZooKeeper 를 같이 쓸 때 budget 을 넘지 않는지 확인한다.
+ */
+class ClusterRateLimitQuotaTest {
+
+  private static final int NODES = 3;
+  private static final int THREADS_PER_NODE = 4;
+  private static final int LEASE_BLOCK_SIZE = 5;
+
+  private static String connectString;
+
+  private final List<CuratorFramework> clients = new ArrayList<>();
+  private final List<ClusterRateLimitQuota> quotas = new ArrayList<>();
+
+  @BeforeAll
+  static void startZookeeper() throws IOException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    EmbedZookeeperServer.start(port);
+    connectString = "localhost:" + port;
+  }
+
+  @AfterEach
+  void close() {
+    quotas.forEach(ClusterRateLimitQuota::close);
+    clients.forEach(CuratorFramework::close);
+  }
+
+  @Test
+  void nodesTogetherStayWithinBudget() throws Exception {
+    // window 하나 안에서 끝나도록 window 를 넉넉히 잡는다.
+    long windowMillis = TimeUnit.SECONDS.toMillis(10);
+    int budgetPerSec = 10;
+    long budget = budgetPerSec * windowMillis / 1000;
+
+    for (int i = 0; i < NODES; i++) {
+      quotas.add(new ClusterRateLimitQuota(newClient("within-budget"), LEASE_BLOCK_SIZE, windowMillis, 1,
+          Map.of("provider", budgetPerSec)));
+    }
+
+    // window 가 바뀌는 시점 직후에 시작한다.
+    long nowMillis = System.currentTimeMillis();
+    Thread.sleep(windowMillis - nowMillis % windowMillis + 100);
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(2);
+
+    AtomicLong acquired = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(NODES * THREADS_PER_NODE);
+    for (ClusterRateLimitQuota quota : quotas) {
+      for (int t = 0; t < THREADS_PER_NODE; t++) {
+        executor.execute(() -> {
+          while (System.currentTimeMillis() < deadline) {
+            long waitNanos = quota.tryAcquire("provider");
+            if (0 == waitNanos) {
+              acquired.incrementAndGet();
+            } else {
+              LockSupport.parkNanos(Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+          }
+        });
+      }
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // 각 node 가 빌려놓고 아직 쓰지 않은 token 은 block 하나보다 적다.
+    assertTrue(acquired.get() <= budget, "acquired " + acquired.get() + " > budget " + budget);
+    assertTrue(acquired.get() >= budget - NODES * (LEASE_BLOCK_SIZE - 1),
+        "acquired " + acquired.get() + " is too small for budget " + budget);
+  }
+
+  @Test
+  void acquireDoesNotWaitForLease() throws Exception {
+    ClusterRateLimitQuota quota = new ClusterRateLimitQuota(newClient("lease-ahead"), LEASE_BLOCK_SIZE,
+        TimeUnit.SECONDS.toMillis(10), 100, Map.of());
+    quotas.add(quota);
+
+    // 아직 빌려온 token 이 없으므로 ZooKeeper 를 기다리지 않고 바로 조금 뒤에 다시 부르라고 한다.
+    long waitNanos = quota.tryAcquire("provider");
+    assertTrue(waitNanos > 0 && waitNanos < TimeUnit.MILLISECONDS.toNanos(100), "wait " + waitNanos);
+
+    // lease thread 가 빌려오면 token 을 얻는다.
+    assertTrue(acquireWithin(quota, TimeUnit.SECONDS.toMillis(5)));
+  }
+
+  @Test
+  void cleanupRemovesOldWindows() throws Exception {
+    long windowMillis = 100L;
+    CuratorFramework client = newClient("cleanup");
+    ClusterRateLimitQuota quota = new ClusterRateLimitQuota(client, LEASE_BLOCK_SIZE, windowMillis, 100, Map.of());
+    quotas.add(quota);
+
+    assertTrue(acquireWithin(quota, TimeUnit.SECONDS.toMillis(5)));
+    assertFalse(client.getChildren().forPath("/rate-limit-quota/provider").isEmpty());
+
+    Thread.sleep(windowMillis * 3);
+    quota.cleanupOldWindows();
+
+    assertTrue(client.getChildren().forPath("/rate-limit-quota/provider").isEmpty());
+  }
+
+  private static boolean acquireWithin(ClusterRateLimitQuota quota, long timeoutMillis) {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (System.currentTimeMillis() < deadline) {
+      long waitNanos = quota.tryAcquire("provider");
+      if (0 == waitNanos) {
+        return true;
+      }
+      LockSupport.parkNanos(Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+    return false;
+  }
+
+  private CuratorFramework newClient(String namespace) throws InterruptedException {
+    CuratorFramework client = CuratorFrameworkFactory.builder()
+        .connectString(connectString)
+        .namespace(namespace)
+        .retryPolicy(new RetryOneTime(100))
+        .build();
+    client.start();
+    assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+    clients.add(client);
+    return client;
+  }
+}
@@ -0,0 +1,122 @@
+package com.devtaco.distribute.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 같은 key 의 작업을 한 번만 수행하고, 끝난 결과는 ttl 동안만 재사용하는지 확인한다.
+ */
+class SingleFlightTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+
+  @Test
+  void concurrentCallsShareOneFlight() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>(0L);
+    CompletableFuture<String> pending = new CompletableFuture<>();
+
+    CompletableFuture<String> first = flight.execute("key", counted(() -> pending));
+    CompletableFuture<String> second = flight.execute("key", counted(() -> pending));
+    CompletableFuture<String> other = flight.execute("other", counted(() -> CompletableFuture.completedFuture("x")));
+
+    assertEquals(2, calls.get());
+    assertEquals(1, flight.inFlightCount());
+
+    pending.complete("value");
+    assertEquals("value", first.get());
+    assertEquals("value", second.get());
+    assertEquals("x", other.get());
+    assertEquals(0, flight.inFlightCount());
+  }
+
+  @Test
+  void cancelDoesNotAffectOtherCallers() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>(0L);
+    CompletableFuture<String> pending = new CompletableFuture<>();
+
+    CompletableFuture<String> first = flight.execute("key", counted(() -> pending));
+    CompletableFuture<String> second = flight.execute("key", counted(() -> pending));
+    first.cancel(true);
+
+    pending.complete("value");
+    assertEquals("value", second.get());
+  }
+
+  @Test
+  void failureReachesEveryCallerAndIsNotCached() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>(60_000L);
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    IllegalStateException failure = new IllegalStateException("fail");
+
+    CompletableFuture<String> first = flight.execute("key", counted(() -> pending));
+    CompletableFuture<String> second = flight.execute("key", counted(() -> pending));
+    pending.completeExceptionally(failure);
+
+    assertSame(failure, assertThrows(ExecutionException.class, first::get).getCause());
+    assertSame(failure, assertThrows(ExecutionException.class, second::get).getCause());
+
+    assertEquals("retry", flight.execute("key", counted(() -> CompletableFuture.completedFuture("retry"))).get());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void thrownExceptionFailsFlight() {
+    SingleFlight<String, String> flight = new SingleFlight<>(0L);
+
+    CompletableFuture<String> result = flight.execute("key", () -> {
+      throw new IllegalArgumentException("bad request");
+    });
+
+    assertTrue(assertThrows(ExecutionException.class, result::get).getCause() instanceof IllegalArgumentException);
+    assertEquals(0, flight.inFlightCount());
+  }
+
+  @Test
+  void completedResultReusedUntilTtlExpires() throws Exception {
+    long ttlMillis = 100L;
+    SingleFlight<String, String> flight = new SingleFlight<>(ttlMillis);
+
+    assertEquals("v1", flight.execute("key", counted(() -> CompletableFuture.completedFuture("v1"))).get());
+    assertEquals("v1", flight.execute("key", counted(() -> CompletableFuture.completedFuture("v2"))).get());
+    assertEquals(1, calls.get());
+
+    Thread.sleep(ttlMillis * 2);
+    assertEquals("v3", flight.execute("key", counted(() -> CompletableFuture.completedFuture("v3"))).get());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void nullResultIsNotCached() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>(60_000L);
+
+    assertNull(flight.execute("key", counted(() -> CompletableFuture.completedFuture(null))).get());
+    assertEquals("value", flight.execute("key", counted(() -> CompletableFuture.completedFuture("value"))).get());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void zeroTtlSharesOnlyInFlight() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>(0L);
+
+    flight.execute("key", counted(() -> CompletableFuture.completedFuture("v1"))).get();
+    assertEquals("v2", flight.execute("key", counted(() -> CompletableFuture.completedFuture("v2"))).get());
+    assertEquals(2, calls.get());
+  }
+
+  private Supplier<CompletableFuture<String>> counted(Supplier<CompletableFuture<String>> call) {
+    return () -> {
+      calls.incrementAndGet();
+      return call.get();
+    };
+  }
+}